@@ -0,0 +1,234 @@
+package com.company;
+
+/**
+ * BBitSignatureMatrix
+ *
+ * b-bit minwise hashing: only the lowest b bits of each row of the MinHash signatures are kept,
+ * packed in longs (64 / b rows per long, the signature of each document is contiguous).
+ * With b = 1 a signature of 100 rows takes 16 bytes instead of 400.
+ *
+ * Two rows with different minimums agree on their lowest b bits with probability about 1/2^b,
+ * so the fraction of matching rows overestimates the Jaccard similarity: similarity() corrects this bias
+ * with the estimator of Li and König (b-bit minwise hashing, 2010).
+ * Rows are compared 64 / b at a time with a XOR and a popcount.
+ */
+public class BBitSignatureMatrix {
+
+    /**
+     * UNIVERSE: number of possible hash values (size of the space the minimums are drawn from)
+     */
+    private static final double UNIVERSE = Math.pow(2, HashFamily.HASH_BITS);
+
+    /**
+     * words: packed rows, the signature of document d starts at (d - 1) * wordsPerDocument
+     */
+    private final long[] words;
+
+    /**
+     * b: bits kept per row
+     * length: number of rows of each signature
+     * numberOfDocuments: number of signatures
+     * rowsPerWord: 64 / b
+     * wordsPerDocument: longs used by each signature
+     */
+    private final int b, length, numberOfDocuments, rowsPerWord, wordsPerDocument;
+
+    /**
+     * rowMask: the lowest b bits
+     * firstBits: the lowest bit of every row of a word
+     */
+    private final long rowMask, firstBits;
+
+    /**
+     * BBitSignatureMatrix constructor
+     *
+     * @param numberOfDocuments
+     * @param length number of rows of each signature
+     * @param b bits kept per row: 1, 2, 4, 8, 16 or 32
+     */
+    public BBitSignatureMatrix(int numberOfDocuments, int length, int b) {
+        if (b < 1 || b > 32 || Integer.bitCount(b) != 1) {
+            throw new IllegalArgumentException("b must be 1, 2, 4, 8, 16 or 32: " + b);
+        }
+        this.b = b;
+        this.length = length;
+        this.numberOfDocuments = numberOfDocuments;
+        this.rowsPerWord = 64 / b;
+        this.wordsPerDocument = (length + this.rowsPerWord - 1) / this.rowsPerWord;
+        this.words = new long[Math.multiplyExact(numberOfDocuments, this.wordsPerDocument)];
+        this.rowMask = (1L << b) - 1;
+
+        long firstBits = 0;
+        for (int row = 0; row < this.rowsPerWord; row++) {
+            firstBits |= 1L << (row * b);
+        }
+        this.firstBits = firstBits;
+    }
+
+    /**
+     * pack
+     *
+     * @param matrix full signatures
+     * @param b bits kept per row
+     * @return the b-bit signatures of the matrix
+     */
+    public static BBitSignatureMatrix pack(SignatureMatrix matrix, int b) {
+        BBitSignatureMatrix packed = new BBitSignatureMatrix(matrix.getNumberOfDocuments(), matrix.length(), b);
+        for (int doc = 1; doc <= matrix.getNumberOfDocuments(); doc++) {
+            packed.set(doc, matrix.getValues(), matrix.offset(doc));
+        }
+        return packed;
+    }
+
+    /**
+     * set
+     *
+     * Stores the lowest b bits of each row of a full signature
+     *
+     * @param doc
+     * @param signature
+     * @param offset position of the first row of the signature
+     */
+    public void set(int doc, int[] signature, int offset) {
+        int first = (doc - 1) * this.wordsPerDocument;
+        for (int word = 0; word < this.wordsPerDocument; word++) {
+            long packed = 0;
+            int firstRow = word * this.rowsPerWord;
+            int lastRow = Math.min(firstRow + this.rowsPerWord, this.length);
+            for (int row = firstRow; row < lastRow; row++) {
+                packed |= (signature[offset + row] & this.rowMask) << ((row - firstRow) * this.b);
+            }
+            this.words[first + word] = packed;
+        }
+    }
+
+    /**
+     * get
+     *
+     * @param doc
+     * @param row
+     * @return the lowest b bits of the row
+     */
+    public int get(int doc, int row) {
+        long word = this.words[(doc - 1) * this.wordsPerDocument + row / this.rowsPerWord];
+        return (int) ((word >>> ((row % this.rowsPerWord) * this.b)) & this.rowMask);
+    }
+
+    /**
+     * matches
+     *
+     * @param doc1
+     * @param doc2
+     * @return number of rows whose lowest b bits are the same in the two signatures
+     */
+    public int matches(int doc1, int doc2) {
+        int offset1 = (doc1 - 1) * this.wordsPerDocument;
+        int offset2 = (doc2 - 1) * this.wordsPerDocument;
+        int differences = 0;
+        for (int word = 0; word < this.wordsPerDocument; word++) {
+            long difference = this.words[offset1 + word] ^ this.words[offset2 + word];
+            // fold each row on its lowest bit: the bit is set if the row differs
+            for (int shift = 1; shift < this.b; shift <<= 1) {
+                difference |= difference >>> shift;
+            }
+            differences += Long.bitCount(difference & this.firstBits);
+        }
+        // the unused rows of the last word are 0 in both signatures, so they are never counted as differences
+        return this.length - differences;
+    }
+
+    /**
+     * similarity
+     *
+     * Jaccard similarity estimated for documents with many shingles (the random match probability is 1/2^b)
+     *
+     * @param doc1
+     * @param doc2
+     * @return estimated Jaccard similarity
+     */
+    public float similarity(int doc1, int doc2) {
+        double random = 1.0 / (1L << this.b);
+        return (float) clamp((matchFraction(doc1, doc2) - random) / (1 - random));
+    }
+
+    /**
+     * similarity
+     *
+     * Jaccard similarity estimated with the exact correction for the number of shingles of the two documents
+     *
+     * @param doc1
+     * @param doc2
+     * @param size1 number of shingles of the first document
+     * @param size2 number of shingles of the second document
+     * @return estimated Jaccard similarity
+     */
+    public float similarity(int doc1, int doc2, int size1, int size2) {
+        return (float) estimate(matchFraction(doc1, doc2), this.b, size1, size2);
+    }
+
+    /**
+     * estimate
+     *
+     * R = (P - C1) / (1 - C2), where P is the fraction of matching rows and C1, C2 the probabilities
+     * that the lowest b bits of two different minimums are equal (Li and König, Theorem 1)
+     *
+     * @param matchFraction fraction of rows whose lowest b bits are the same
+     * @param b
+     * @param size1 number of shingles of the first document
+     * @param size2 number of shingles of the second document
+     * @return estimated Jaccard similarity
+     */
+    public static double estimate(double matchFraction, int b, int size1, int size2) {
+        if (size1 == 0 || size2 == 0) {
+            return 0;
+        }
+        double r1 = size1 / UNIVERSE;
+        double r2 = size2 / UNIVERSE;
+        double a1 = a(r1, b);
+        double a2 = a(r2, b);
+        double c1 = (a1 * r2 + a2 * r1) / (r1 + r2);
+        double c2 = (a1 * r1 + a2 * r2) / (r1 + r2);
+        return clamp((matchFraction - c1) / (1 - c2));
+    }
+
+    public int getB() {
+        return this.b;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    /**
+     * getWords
+     *
+     * @return the packed signatures (the signature of document d starts at (d - 1) * getWordsPerDocument())
+     */
+    public long[] getWords() {
+        return this.words;
+    }
+
+    public int getWordsPerDocument() {
+        return this.wordsPerDocument;
+    }
+
+    // fraction of matching rows
+    private double matchFraction(int doc1, int doc2) {
+        return (double) matches(doc1, doc2) / this.length;
+    }
+
+    // A(r, b) = r (1 - r)^(2^b - 1) / (1 - (1 - r)^(2^b)), computed without cancellation for small r
+    private static double a(double r, int b) {
+        double m = Math.pow(2, b);
+        double logComplement = Math.log1p(-r);
+        return r * Math.exp((m - 1) * logComplement) / -Math.expm1(m * logComplement);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
@@ -0,0 +1,51 @@
+package com.company;
+
+/**
+ * BandHasher
+ *
+ * 64-bit hash of a band of a signature, computed directly from the primitive values
+ * (the band index is part of the hash, so equal values in different bands give different keys).
+ */
+public class BandHasher {
+
+    private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private BandHasher() {
+    }
+
+    /**
+     * hash
+     *
+     * @param values signatures (see SignatureMatrix.getValues())
+     * @param offset position of the first row of the band
+     * @param rows number of rows of the band
+     * @param band index of the band
+     * @return 64-bit key of the band
+     */
+    public static long hash(int[] values, int offset, int rows, int band) {
+        long h = RollingShingleHasher.mix(band + 1);
+        for (int i = 0; i < rows; i++) {
+            h = (h ^ (values[offset + i] & 0xFFFFFFFFL)) * MULTIPLIER;
+            h ^= h >>> 29;
+        }
+        return RollingShingleHasher.mix(h);
+    }
+
+    /**
+     * hashBand
+     *
+     * Hashes one band of all the signatures of a matrix. The keys are the ones of hash,
+     * and the array can be reused for every band, so the keys only take 8 bytes per document.
+     *
+     * @param matrix signatures
+     * @param band index of the band
+     * @param rows number of rows of each band
+     * @param keys receives the key of the band of each document (keys[d - 1] for document d)
+     */
+    public static void hashBand(SignatureMatrix matrix, int band, int rows, long[] keys) {
+        int[] values = matrix.getValues();
+        for (int doc = 1; doc <= matrix.getNumberOfDocuments(); doc++) {
+            keys[doc - 1] = hash(values, matrix.offset(doc) + band * rows, rows, band);
+        }
+    }
+}
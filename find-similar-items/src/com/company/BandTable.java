@@ -0,0 +1,200 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * BandTable
+ *
+ * Buckets of one LSH band: a primitive multimap from the 64-bit hash of a band to the documents having it.
+ * The keys are kept in an open addressing table, the documents of a bucket are chained in two int arrays
+ * (no boxed keys, lists or strings).
+ */
+public class BandTable {
+
+    /**
+     * MAX_LOAD: the table of keys is doubled when it is more than half full
+     */
+    private static final double MAX_LOAD = 0.5;
+
+    /**
+     * BucketConsumer
+     *
+     * Receives the documents of a bucket: the first size elements of docs (the array is reused between buckets)
+     */
+    public interface BucketConsumer {
+        void accept(int[] docs, int size);
+    }
+
+    /**
+     * keys: band hash of each slot
+     * heads: last entry added to the bucket of each slot, -1 if the slot is free
+     * sizes: number of documents in the bucket of each slot
+     */
+    private long[] keys;
+    private int[] heads, sizes;
+
+    /**
+     * docs: document of each entry
+     * next: previous entry of the same bucket, -1 at the end of the chain
+     */
+    private int[] docs, next;
+
+    /**
+     * buckets: number of buckets
+     * entries: number of documents added
+     * mask: capacity of the table of keys - 1
+     * largestBucket: size of the largest bucket
+     */
+    private int buckets, entries, mask, largestBucket;
+
+    /**
+     * BandTable constructor
+     *
+     * @param expectedDocuments
+     */
+    public BandTable(int expectedDocuments) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedDocuments / MAX_LOAD)) - 1) << 1;
+        allocate(capacity);
+        this.docs = new int[Math.max(16, expectedDocuments)];
+        this.next = new int[this.docs.length];
+    }
+
+    /**
+     * add
+     *
+     * @param key hash of the band
+     * @param doc
+     */
+    public void add(long key, int doc) {
+        int slot = find(key);
+        if (this.heads[slot] == -1) {
+            this.keys[slot] = key;
+            this.buckets++;
+        }
+
+        if (this.entries == this.docs.length) {
+            this.docs = Arrays.copyOf(this.docs, this.entries * 2);
+            this.next = Arrays.copyOf(this.next, this.entries * 2);
+        }
+        this.docs[this.entries] = doc;
+        this.next[this.entries] = this.heads[slot];
+        this.heads[slot] = this.entries++;
+        this.largestBucket = Math.max(this.largestBucket, ++this.sizes[slot]);
+
+        if (this.buckets > MAX_LOAD * this.keys.length) {
+            resize();
+        }
+    }
+
+    /**
+     * forEachDocument
+     *
+     * @param key hash of the band
+     * @param consumer receives the documents of the bucket
+     */
+    public void forEachDocument(long key, IntConsumer consumer) {
+        for (int entry = this.heads[find(key)]; entry != -1; entry = this.next[entry]) {
+            consumer.accept(this.docs[entry]);
+        }
+    }
+
+    /**
+     * bucketSize
+     *
+     * @param key hash of the band
+     * @return number of documents in the bucket
+     */
+    public int bucketSize(long key) {
+        int slot = find(key);
+        return this.heads[slot] == -1 ? 0 : this.sizes[slot];
+    }
+
+    /**
+     * forEachBucket
+     *
+     * @param minSize buckets with less documents are skipped
+     * @param consumer receives the documents of each bucket
+     */
+    public void forEachBucket(int minSize, BucketConsumer consumer) {
+        int[] bucket = new int[Math.max(1, this.largestBucket)];
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.heads[slot] == -1 || this.sizes[slot] < minSize) {
+                continue;
+            }
+            int size = 0;
+            for (int entry = this.heads[slot]; entry != -1; entry = this.next[entry]) {
+                bucket[size++] = this.docs[entry];
+            }
+            consumer.accept(bucket, size);
+        }
+    }
+
+    /**
+     * addBucketSizes
+     *
+     * Counts the buckets by size, in powers of two: histogram[i] is increased for each bucket with
+     * more than 2^(i-1) and at most 2^i documents
+     *
+     * @param histogram at least 32 counters
+     */
+    public void addBucketSizes(long[] histogram) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.heads[slot] != -1) {
+                histogram[32 - Integer.numberOfLeadingZeros(this.sizes[slot] - 1)]++;
+            }
+        }
+    }
+
+    /**
+     * getBuckets
+     *
+     * @return number of buckets
+     */
+    public int getBuckets() {
+        return this.buckets;
+    }
+
+    /**
+     * getLargestBucket
+     *
+     * @return number of documents in the largest bucket
+     */
+    public int getLargestBucket() {
+        return this.largestBucket;
+    }
+
+    // slot of the key, or the free slot where it should be inserted
+    private int find(long key) {
+        int slot = (int) RollingShingleHasher.mix(key) & this.mask;
+        while (this.heads[slot] != -1 && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    // double the capacity of the table of keys (the chains of documents do not move)
+    private void resize() {
+        long[] oldKeys = this.keys;
+        int[] oldHeads = this.heads;
+        int[] oldSizes = this.sizes;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] != -1) {
+                int slot = find(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.heads[slot] = oldHeads[i];
+                this.sizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.heads = new int[capacity];
+        this.sizes = new int[capacity];
+        Arrays.fill(this.heads, -1);
+        this.mask = capacity - 1;
+    }
+}
@@ -0,0 +1,88 @@
+package com.company;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CandidateVerifier
+ *
+ * Verification stage of the LSH: computes the exact Jaccard similarity of the candidate pairs
+ * and passes on the ones reaching the threshold, with their similarity.
+ * The pairs are verified in parallel, and the intersection of two sets stops as soon as
+ * the number of shingles in common needed for the threshold cannot be reached any more.
+ */
+public class CandidateVerifier {
+
+    /**
+     * EPSILON: tolerance of the bound computed with doubles (it is never rounded above the exact one)
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * documentShingles: sorted shingle set of each document (the one of document d is at d - 1)
+     * threshold: minimum Jaccard similarity of the pairs
+     */
+    private final List<long[]> documentShingles;
+    private final double threshold;
+
+    /**
+     * CandidateVerifier constructor
+     *
+     * @param documentShingles sorted shingle set of each document (the one of document d is at d - 1)
+     * @param threshold minimum Jaccard similarity
+     */
+    public CandidateVerifier(List<long[]> documentShingles, double threshold) {
+        this.documentShingles = documentShingles;
+        this.threshold = threshold;
+    }
+
+    /**
+     * verify
+     *
+     * @param candidatePairs pairs of documents (see DocumentPairs), e.g. from LSH.findCandidates
+     * @param parallel whether the pairs are verified by several threads
+     * @param consumer receives the pairs at least as similar as the threshold (called by several threads if parallel)
+     * @return number of pairs passed to the consumer
+     */
+    public int verify(LongHashSet candidatePairs, boolean parallel, PairConsumer consumer) {
+        long[] pairs = candidatePairs.toArray();
+        AtomicInteger confirmed = new AtomicInteger();
+        DocumentTasks.forEachDocument(pairs.length, parallel, i -> {
+            int doc1 = DocumentPairs.first(pairs[i - 1]);
+            int doc2 = DocumentPairs.second(pairs[i - 1]);
+            float similarity = similarity(doc1, doc2);
+            if (similarity >= 0) {
+                consumer.accept(doc1, doc2, similarity);
+                confirmed.incrementAndGet();
+            }
+        });
+        return confirmed.get();
+    }
+
+    /**
+     * similarity
+     *
+     * @param doc1
+     * @param doc2
+     * @return Jaccard similarity of the two documents, or -1 if it is below the threshold
+     */
+    public float similarity(int doc1, int doc2) {
+        long[] set1 = this.documentShingles.get(doc1 - 1);
+        long[] set2 = this.documentShingles.get(doc2 - 1);
+        if (set1.length == 0 || set2.length == 0) {
+            return -1;
+        }
+        // |A n B| / (|A| + |B| - |A n B|) >= t  <=>  |A n B| >= t / (1 + t) * (|A| + |B|)
+        int minCommon = (int) Math.ceil(this.threshold / (1 + this.threshold) * (set1.length + set2.length) - EPSILON);
+        int common = ShingleSets.intersectionSize(set1, set2, Math.max(0, minCommon));
+        if (common < 0) {
+            return -1;
+        }
+        double similarity = (double) common / (set1.length + set2.length - common);
+        return similarity >= this.threshold ? (float) similarity : -1;
+    }
+
+    public double getThreshold() {
+        return this.threshold;
+    }
+}
@@ -0,0 +1,159 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * DocumentClusters
+ *
+ * Groups of near duplicate documents: a concurrent union-find over the document ids, fed with similar pairs
+ * (e.g. by CandidateVerifier or SimilarityJoin, from several threads at the same time).
+ * The parents are kept in a single AtomicIntegerArray (4 bytes per document, no graph of objects):
+ * a root is always linked under the smaller root with a compare-and-set, and find halves the paths it walks,
+ * so the root of a cluster is its smallest document and is used as the cluster id.
+ */
+public class DocumentClusters implements PairConsumer {
+
+    /**
+     * parents: parent of each document (parents[d] for document d), a root is its own parent
+     */
+    private final AtomicIntegerArray parents;
+
+    /**
+     * DocumentClusters constructor
+     *
+     * Every document starts in its own cluster
+     *
+     * @param numberOfDocuments
+     */
+    public DocumentClusters(int numberOfDocuments) {
+        this.parents = new AtomicIntegerArray(numberOfDocuments + 1);
+        for (int doc = 0; doc <= numberOfDocuments; doc++) {
+            this.parents.set(doc, doc);
+        }
+    }
+
+    /**
+     * accept
+     *
+     * Merges the clusters of the two documents of a similar pair
+     */
+    @Override
+    public void accept(int doc1, int doc2, float similarity) {
+        union(doc1, doc2);
+    }
+
+    /**
+     * union
+     *
+     * @param doc1
+     * @param doc2
+     * @return false if the documents were already in the same cluster
+     */
+    public boolean union(int doc1, int doc2) {
+        while (true) {
+            int root1 = find(doc1);
+            int root2 = find(doc2);
+            if (root1 == root2) {
+                return false;
+            }
+            // the larger root goes under the smaller one, so no cycle can be created
+            int small = Math.min(root1, root2);
+            int large = Math.max(root1, root2);
+            if (this.parents.compareAndSet(large, large, small)) {
+                return true;
+            }
+            // another thread linked the large root in the meantime: retry with the new roots
+        }
+    }
+
+    /**
+     * find
+     *
+     * @param doc
+     * @return id of the cluster of the document (its smallest document, once all the pairs are added)
+     */
+    public int find(int doc) {
+        while (true) {
+            int parent = this.parents.get(doc);
+            if (parent == doc) {
+                return doc;
+            }
+            int grandParent = this.parents.get(parent);
+            if (grandParent == parent) {
+                return parent;
+            }
+            // path halving: skip the parent, the grand parent is in the same cluster
+            this.parents.compareAndSet(doc, parent, grandParent);
+            doc = grandParent;
+        }
+    }
+
+    /**
+     * getClusterIds
+     *
+     * @return cluster id of each document (the one of document d is at d - 1)
+     */
+    public int[] getClusterIds() {
+        int[] ids = new int[getNumberOfDocuments()];
+        for (int doc = 1; doc <= ids.length; doc++) {
+            ids[doc - 1] = find(doc);
+        }
+        return ids;
+    }
+
+    /**
+     * getClusters
+     *
+     * @param minSize smallest cluster returned (2 to leave out the documents without near duplicates)
+     * @return the documents of each cluster, in order of cluster id
+     */
+    public List<int[]> getClusters(int minSize) {
+        int[] ids = getClusterIds();
+
+        // count the documents of each cluster, then place them (counting sort by cluster id)
+        int[] sizes = new int[ids.length + 1];
+        for (int id : ids) {
+            sizes[id]++;
+        }
+        int[][] clusters = new int[ids.length + 1][];
+        int[] filled = new int[ids.length + 1];
+        for (int doc = 1; doc <= ids.length; doc++) {
+            int id = ids[doc - 1];
+            if (sizes[id] >= minSize) {
+                if (clusters[id] == null) {
+                    clusters[id] = new int[sizes[id]];
+                }
+                clusters[id][filled[id]++] = doc;
+            }
+        }
+
+        List<int[]> result = new ArrayList<>();
+        for (int[] cluster : clusters) {
+            if (cluster != null) {
+                result.add(cluster);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * getNumberOfClusters
+     *
+     * @return number of clusters, counting the documents alone
+     */
+    public int getNumberOfClusters() {
+        int clusters = 0;
+        for (int doc = 1; doc <= getNumberOfDocuments(); doc++) {
+            if (this.parents.get(doc) == doc) {
+                clusters++;
+            }
+        }
+        return clusters;
+    }
+
+    public int getNumberOfDocuments() {
+        return this.parents.length() - 1;
+    }
+}
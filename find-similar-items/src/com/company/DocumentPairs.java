@@ -0,0 +1,56 @@
+package com.company;
+
+/**
+ * DocumentPairs
+ *
+ * Encodes a pair of document ids in a single long: the smaller id in the 32 most significant bits,
+ * the greater one in the 32 least significant bits (so sorting the longs sorts the pairs).
+ */
+public class DocumentPairs {
+
+    private DocumentPairs() {
+    }
+
+    /**
+     * encode
+     *
+     * @param doc1
+     * @param doc2
+     * @return the pair, independent of the order of the two documents
+     */
+    public static long encode(int doc1, int doc2) {
+        int first = Math.min(doc1, doc2);
+        int second = Math.max(doc1, doc2);
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * first
+     *
+     * @param pair
+     * @return the smaller document id of the pair
+     */
+    public static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    /**
+     * second
+     *
+     * @param pair
+     * @return the greater document id of the pair
+     */
+    public static int second(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * toString
+     *
+     * @param pair
+     * @return "first-second"
+     */
+    public static String toString(long pair) {
+        return first(pair) + "-" + second(pair);
+    }
+}
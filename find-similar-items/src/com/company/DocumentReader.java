@@ -0,0 +1,141 @@
+package com.company;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DocumentReader
+ *
+ * Reads a text file through NIO in large buffers and normalizes it in a single pass, without regular expressions:
+ *  - line terminators are dropped (the lines are joined),
+ *  - inside a line, a run of two or more white spaces becomes a single space,
+ *  - the ’ character is removed,
+ *  - the text is lower cased, character by character.
+ * This is the same text the line by line reader of Main used to build (see Checks.documentReader), except for the few
+ * lower case mappings of String.toLowerCase that depend on the next characters or on the locale
+ * (a final capital sigma, the dotted capital I, Turkish and Lithuanian locales).
+ */
+public class DocumentReader {
+
+    /**
+     * BUFFER_SIZE: size of the read buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final char APOSTROPHE = '’';
+
+    private DocumentReader() {
+    }
+
+    /**
+     * read
+     *
+     * @param file UTF-8 text file
+     * @return normalized text of the file
+     * @throws IOException
+     */
+    public static String read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.max(16, Math.min(size, BUFFER_SIZE)));
+            CharBuffer chars = CharBuffer.allocate(bytes.capacity());
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            Normalizer normalizer = new Normalizer((int) Math.min(size, Integer.MAX_VALUE - 8));
+
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(bytes) == -1;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, endOfInput);
+                    chars.flip();
+                    normalizer.append(chars);
+                    chars.clear();
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            decoder.flush(chars);
+            chars.flip();
+            normalizer.append(chars);
+
+            return normalizer.finish();
+        }
+    }
+
+    /**
+     * normalize
+     *
+     * @param text
+     * @return the text normalized as a file read by read(File)
+     */
+    public static String normalize(CharSequence text) {
+        Normalizer normalizer = new Normalizer(text.length());
+        normalizer.append(CharBuffer.wrap(text));
+        return normalizer.finish();
+    }
+
+    /**
+     * Normalizer
+     *
+     * Single pass normalization of the characters received in chunks
+     */
+    private static class Normalizer {
+
+        private final StringBuilder text;
+
+        /**
+         * whiteSpaces: length of the current run of white spaces, firstWhiteSpace: its first character
+         */
+        private int whiteSpaces;
+        private char firstWhiteSpace;
+
+        Normalizer(int expectedLength) {
+            this.text = new StringBuilder(expectedLength);
+        }
+
+        void append(CharBuffer chars) {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (c == '\n' || c == '\r') {
+                    // the end of a line ends the run of white spaces, the terminator itself is dropped
+                    flushWhiteSpaces();
+                } else if (c == ' ' || c == '\t' || c == '\f' || c == '\u000B') {
+                    if (this.whiteSpaces++ == 0) {
+                        this.firstWhiteSpace = c;
+                    }
+                } else {
+                    flushWhiteSpaces();
+                    if (c != APOSTROPHE) {
+                        this.text.append(Character.toLowerCase(c));
+                    }
+                }
+            }
+        }
+
+        String finish() {
+            flushWhiteSpaces();
+            return this.text.toString();
+        }
+
+        // a single white space is kept as it is, a longer run becomes a space
+        private void flushWhiteSpaces() {
+            if (this.whiteSpaces == 1) {
+                this.text.append(this.firstWhiteSpace);
+            } else if (this.whiteSpaces > 1) {
+                this.text.append(' ');
+            }
+            this.whiteSpaces = 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.company;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * DocumentTasks
+ *
+ * Runs a task for every document, on the current thread or with fork/join over ranges of documents.
+ */
+public class DocumentTasks {
+
+    /**
+     * TASKS_PER_THREAD: number of ranges of documents created for each thread of the pool (load balancing)
+     */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private DocumentTasks() {
+    }
+
+    /**
+     * forEachDocument
+     *
+     * @param numberOfDocuments
+     * @param parallel whether the documents are split between the threads of the common pool
+     * @param task called once for each document 1..numberOfDocuments
+     */
+    public static void forEachDocument(int numberOfDocuments, boolean parallel, IntConsumer task) {
+        if (parallel) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int granularity = Math.max(1, numberOfDocuments / (pool.getParallelism() * TASKS_PER_THREAD));
+            pool.invoke(new RangeTask(task, 1, numberOfDocuments + 1, granularity));
+        } else {
+            for (int doc = 1; doc <= numberOfDocuments; doc++) {
+                task.accept(doc);
+            }
+        }
+    }
+
+    /**
+     * RangeTask
+     *
+     * Runs the task for the documents in [from, to), splitting the range in two while it is too large
+     */
+    @SuppressWarnings("serial")
+    private static class RangeTask extends RecursiveAction {
+
+        private final IntConsumer task;
+        private final int from, to, granularity;
+
+        RangeTask(IntConsumer task, int from, int to, int granularity) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.granularity) {
+                for (int doc = this.from; doc < this.to; doc++) {
+                    this.task.accept(doc);
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new RangeTask(this.task, this.from, middle, this.granularity),
+                        new RangeTask(this.task, middle, this.to, this.granularity));
+            }
+        }
+    }
+}
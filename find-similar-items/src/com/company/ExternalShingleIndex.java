@@ -0,0 +1,406 @@
+package com.company;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * ExternalShingleIndex
+ *
+ * Out-of-core alternative to the shingle sets kept by Shingling, for corpora whose shingles do not fit in the heap.
+ * The (shingle, document) pairs are buffered up to a memory budget, then sorted and spilled to a run file on disk.
+ * The signatures are computed by a k-way merge of the runs: every shingle comes out once with all its documents,
+ * is hashed once and updates their signatures (see MinHasher.minimize).
+ * At most MAX_FAN_IN runs are read at the same time: when there are more, the oldest ones are first merged
+ * in bigger runs, as many passes as needed. Only the buffer, MAX_FAN_IN read buffers and the signature matrix
+ * are in memory, and MAX_FAN_IN files are open, so the size of the corpus is bounded by the disk.
+ */
+public class ExternalShingleIndex implements AutoCloseable {
+
+    /**
+     * BYTES_PER_PAIR: memory used by a buffered pair (a long and an int)
+     * RECORD_SIZE: bytes of a pair in a run file
+     * IO_BUFFER_SIZE: size of the buffer of each run file
+     * MAX_FAN_IN: largest number of runs merged together (the runs in memory included)
+     */
+    private static final int BYTES_PER_PAIR = 12;
+    private static final int RECORD_SIZE = 12;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FAN_IN = 64;
+
+    /**
+     * folder: where the runs are written
+     * runs: the run files written so far
+     */
+    private final File folder;
+    private final List<File> runs = new ArrayList<>();
+
+    /**
+     * shingles, docs: the pairs not spilled yet
+     * size: number of pairs buffered
+     */
+    private final long[] shingles;
+    private final int[] docs;
+    private int size;
+
+    /**
+     * numberOfDocuments: number of documents added
+     * numberOfPairs: number of pairs added
+     */
+    private int numberOfDocuments;
+    private long numberOfPairs;
+
+    /**
+     * ExternalShingleIndex constructor
+     *
+     * @param folder where the runs are written (created if needed)
+     * @param memoryBudget bytes used to buffer the pairs before they are spilled
+     * @throws IOException if the folder cannot be created
+     */
+    public ExternalShingleIndex(File folder, long memoryBudget) throws IOException {
+        long capacity = memoryBudget / BYTES_PER_PAIR;
+        if (capacity < 1 || capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Memory budget out of range: " + memoryBudget);
+        }
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create the folder of the runs: " + folder);
+        }
+        this.folder = folder;
+        this.shingles = new long[(int) capacity];
+        this.docs = new int[(int) capacity];
+    }
+
+    /**
+     * addShingleSet
+     *
+     * @param shingleSet sorted shingle ids of a document, without duplicates
+     * @return id of the document (the first one is 1)
+     * @throws IOException if the buffer cannot be spilled
+     */
+    public synchronized int addShingleSet(long[] shingleSet) throws IOException {
+        int doc = ++this.numberOfDocuments;
+        for (long shingle : shingleSet) {
+            if (this.size == this.shingles.length) {
+                spill();
+            }
+            this.shingles[this.size] = shingle;
+            this.docs[this.size++] = doc;
+        }
+        this.numberOfPairs += shingleSet.length;
+        return doc;
+    }
+
+    /**
+     * signatures
+     *
+     * Merges the runs and the pairs still in memory and computes the signatures of all the documents
+     * (the runs beyond MAX_FAN_IN are merged first, see mergeRuns)
+     *
+     * @param minHasher how the signatures are computed
+     * @return matrix of signatures
+     * @throws IOException if a run cannot be read
+     */
+    public synchronized SignatureMatrix signatures(MinHasher minHasher) throws IOException {
+        SignatureMatrix matrix = new SignatureMatrix(this.numberOfDocuments, minHasher.length());
+        sort(0, this.size);
+        // the final merge reads the runs in memory too
+        while (this.runs.size() > MAX_FAN_IN - 1) {
+            mergeRuns();
+        }
+
+        List<Run> opened = new ArrayList<>();
+        Throwable failure = null;
+        try {
+            for (File file : this.runs) {
+                opened.add(new FileRun(file));
+            }
+            opened.add(new MemoryRun());
+            PriorityQueue<Run> queue = queue(opened);
+
+            // all the documents of a shingle come out one after the other
+            int[] shingleDocs = new int[16];
+            int[] rowValues = new int[minHasher.length()];
+            while (!queue.isEmpty()) {
+                long shingle = queue.peek().shingle;
+                int count = 0;
+                while (!queue.isEmpty() && queue.peek().shingle == shingle) {
+                    Run run = queue.poll();
+                    if (count == shingleDocs.length) {
+                        shingleDocs = Arrays.copyOf(shingleDocs, count * 2);
+                    }
+                    shingleDocs[count++] = run.doc;
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+                minHasher.minimize(shingle, matrix, shingleDocs, count, rowValues);
+            }
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            close(opened, failure);
+        }
+        minHasher.completeSignatures(matrix);
+        return matrix;
+    }
+
+    public synchronized int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    public synchronized long getNumberOfPairs() {
+        return this.numberOfPairs;
+    }
+
+    public synchronized int getNumberOfRuns() {
+        return this.runs.size();
+    }
+
+    /**
+     * close
+     *
+     * Deletes the run files
+     */
+    @Override
+    public synchronized void close() {
+        for (File run : this.runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        this.runs.clear();
+    }
+
+    // sort the buffered pairs and write them in a new run (the lock is held)
+    private void spill() throws IOException {
+        sort(0, this.size);
+        File file = File.createTempFile("shingles-", ".run", this.folder);
+        this.runs.add(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+            for (int i = 0; i < this.size; i++) {
+                out.writeLong(this.shingles[i]);
+                out.writeInt(this.docs[i]);
+            }
+        }
+        this.size = 0;
+    }
+
+    // merge the MAX_FAN_IN oldest runs in a new run, which becomes the newest one (the lock is held)
+    private void mergeRuns() throws IOException {
+        List<File> merged = new ArrayList<>(this.runs.subList(0, MAX_FAN_IN));
+        File file = File.createTempFile("shingles-", ".run", this.folder);
+        List<Run> opened = new ArrayList<>();
+        Throwable failure = null;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+            for (File run : merged) {
+                opened.add(new FileRun(run));
+            }
+            PriorityQueue<Run> queue = queue(opened);
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                out.writeLong(run.shingle);
+                out.writeInt(run.doc);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            throw e;
+        } finally {
+            close(opened, failure);
+        }
+
+        this.runs.subList(0, MAX_FAN_IN).clear();
+        this.runs.add(file);
+        for (File run : merged) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+    }
+
+    // the runs positioned on their first pair, the smallest pair first
+    private static PriorityQueue<Run> queue(List<Run> runs) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runs.size()), (run1, run2) -> {
+            int order = Long.compare(run1.shingle, run2.shingle);
+            return order != 0 ? order : Integer.compare(run1.doc, run2.doc);
+        });
+        for (Run run : runs) {
+            if (run.next()) {
+                queue.add(run);
+            }
+        }
+        return queue;
+    }
+
+    // close every run, even if some fail: the failures are added to the one that stopped the merge, if any
+    private static void close(List<Run> runs, Throwable failure) throws IOException {
+        IOException closeFailure = null;
+        for (Run run : runs) {
+            try {
+                run.close();
+            } catch (IOException e) {
+                if (failure != null) {
+                    failure.addSuppressed(e);
+                } else if (closeFailure == null) {
+                    closeFailure = e;
+                } else {
+                    closeFailure.addSuppressed(e);
+                }
+            }
+        }
+        if (closeFailure != null) {
+            throw closeFailure;
+        }
+    }
+
+    // in place quicksort of the pairs in [from, to) by shingle and document
+    private void sort(int from, int to) {
+        while (to - from > 16) {
+            // median of three as pivot
+            int middle = (from + to) >>> 1;
+            if (less(middle, from)) {
+                swap(middle, from);
+            }
+            if (less(to - 1, middle)) {
+                swap(to - 1, middle);
+                if (less(middle, from)) {
+                    swap(middle, from);
+                }
+            }
+            long pivotShingle = this.shingles[middle];
+            int pivotDoc = this.docs[middle];
+
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (compare(i, pivotShingle, pivotDoc) < 0) {
+                    i++;
+                }
+                while (compare(j, pivotShingle, pivotDoc) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse on the smaller part, loop on the larger one
+            if (j - from < to - i) {
+                sort(from, j + 1);
+                from = i;
+            } else {
+                sort(i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && less(j, j - 1); j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int i, long shingle, int doc) {
+        int order = Long.compare(this.shingles[i], shingle);
+        return order != 0 ? order : Integer.compare(this.docs[i], doc);
+    }
+
+    private boolean less(int i, int j) {
+        return compare(i, this.shingles[j], this.docs[j]) < 0;
+    }
+
+    private void swap(int i, int j) {
+        long shingle = this.shingles[i];
+        this.shingles[i] = this.shingles[j];
+        this.shingles[j] = shingle;
+        int doc = this.docs[i];
+        this.docs[i] = this.docs[j];
+        this.docs[j] = doc;
+    }
+
+    /**
+     * Run
+     *
+     * Sorted sequence of pairs being merged: shingle and doc are the current pair
+     */
+    private abstract static class Run {
+
+        long shingle;
+        int doc;
+
+        abstract boolean next() throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    /**
+     * FileRun
+     *
+     * Run read from a file
+     */
+    private static class FileRun extends Run {
+
+        private final DataInputStream in;
+        private long remaining;
+
+        FileRun(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+            this.remaining = file.length() / RECORD_SIZE;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (this.remaining == 0) {
+                return false;
+            }
+            try {
+                this.shingle = this.in.readLong();
+                this.doc = this.in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Truncated run file", e);
+            }
+            this.remaining--;
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * MemoryRun
+     *
+     * The sorted pairs still in the buffer
+     */
+    private class MemoryRun extends Run {
+
+        private int position;
+
+        @Override
+        boolean next() {
+            if (this.position == ExternalShingleIndex.this.size) {
+                return false;
+            }
+            this.shingle = ExternalShingleIndex.this.shingles[this.position];
+            this.doc = ExternalShingleIndex.this.docs[this.position++];
+            return true;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HammingIndex
+ *
+ * Index of SimHash fingerprints answering "which fingerprints are within maxDistance bits of this one",
+ * with the permuted tables of Manku et al. (Detecting near-duplicates for web crawling, 2007).
+ * The fingerprints are cut into B > maxDistance blocks of contiguous bits: two fingerprints differing on
+ * at most maxDistance bits have at least B - maxDistance identical blocks (pigeonhole), so there is a table
+ * for each choice of B - maxDistance blocks, keyed by their bits, and two such fingerprints share a key in one of them.
+ *
+ * The key of a table must have about log2(N) bits for N documents, otherwise its buckets grow with N
+ * (a key of 16 bits leaves N / 65536 unrelated documents per bucket): B is the smallest number of blocks giving
+ * keys that long for the expected number of documents, which takes C(B, maxDistance) tables (at most MAX_TABLES).
+ * A query probes every table and checks the real distance of what it finds.
+ */
+public class HammingIndex {
+
+    /**
+     * DEFAULT_EXPECTED_DOCUMENTS: number of documents the keys are sized for when it is not given
+     * MAX_TABLES: largest number of tables (C(B, maxDistance)) used to lengthen the keys
+     */
+    private static final int DEFAULT_EXPECTED_DOCUMENTS = 1 << 20;
+    private static final int MAX_TABLES = 256;
+
+    /**
+     * bits: length of the fingerprints
+     * words: longs per fingerprint
+     * maxDistance: largest distance the index can answer for
+     */
+    private final int bits, words, maxDistance;
+
+    /**
+     * blockStarts: first bit of each block, blockStarts[blocks] = bits
+     * tableBlocks: the blocks forming the key of each table
+     * tables: the documents of each key of each table
+     */
+    private final int[] blockStarts;
+    private final int[][] tableBlocks;
+    private final BandTable[] tables;
+
+    /**
+     * fingerprints: fingerprint of each indexed document, one after the other
+     * numberOfDocuments: number of indexed documents
+     */
+    private long[] fingerprints;
+    private int numberOfDocuments;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * HammingIndex constructor
+     *
+     * The keys are sized for DEFAULT_EXPECTED_DOCUMENTS documents
+     *
+     * @param bits length of the fingerprints (a multiple of 64)
+     * @param maxDistance largest Hamming distance of the queries
+     */
+    public HammingIndex(int bits, int maxDistance) {
+        this(bits, maxDistance, DEFAULT_EXPECTED_DOCUMENTS);
+    }
+
+    /**
+     * HammingIndex constructor
+     *
+     * @param bits length of the fingerprints (a multiple of 64)
+     * @param maxDistance largest Hamming distance of the queries
+     * @param expectedDocuments number of documents the keys of the tables are sized for
+     */
+    public HammingIndex(int bits, int maxDistance, int expectedDocuments) {
+        if (bits <= 0 || bits % 64 != 0) {
+            throw new IllegalArgumentException("bits must be a multiple of 64: " + bits);
+        }
+        if (maxDistance < 0 || maxDistance >= bits) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and " + (bits - 1) + ": " + maxDistance);
+        }
+        this.bits = bits;
+        this.words = bits / 64;
+        this.maxDistance = maxDistance;
+
+        // add blocks until the keys have log2(expectedDocuments) bits
+        double keyBits = Math.log(Math.max(2, expectedDocuments)) / Math.log(2);
+        int blocks = maxDistance + 1;
+        while (blocks < bits && (double) (blocks - maxDistance) * bits / blocks < keyBits
+                && combinations(blocks + 1, maxDistance) <= MAX_TABLES) {
+            blocks++;
+        }
+        this.blockStarts = new int[blocks + 1];
+        for (int block = 0; block <= blocks; block++) {
+            this.blockStarts[block] = block * bits / blocks;
+        }
+
+        // every choice of blocks - maxDistance blocks, in lexicographic order
+        this.tableBlocks = new int[(int) combinations(blocks, maxDistance)][];
+        int[] chosen = new int[blocks - maxDistance];
+        for (int i = 0; i < chosen.length; i++) {
+            chosen[i] = i;
+        }
+        for (int table = 0; table < this.tableBlocks.length; table++) {
+            this.tableBlocks[table] = chosen.clone();
+            int i = chosen.length - 1;
+            while (i >= 0 && chosen[i] == blocks - chosen.length + i) {
+                i--;
+            }
+            if (i >= 0) {
+                chosen[i]++;
+                for (int j = i + 1; j < chosen.length; j++) {
+                    chosen[j] = chosen[j - 1] + 1;
+                }
+            }
+        }
+        this.tables = new BandTable[this.tableBlocks.length];
+        for (int table = 0; table < this.tables.length; table++) {
+            this.tables[table] = new BandTable(1024);
+        }
+        this.fingerprints = new long[1024 * this.words];
+    }
+
+    /**
+     * add
+     *
+     * @param fingerprint
+     * @return id of the new document (the first one is 1)
+     */
+    public int add(long[] fingerprint) {
+        checkLength(fingerprint);
+        this.lock.writeLock().lock();
+        try {
+            int doc = ++this.numberOfDocuments;
+            int offset = (doc - 1) * this.words;
+            if (offset + this.words > this.fingerprints.length) {
+                this.fingerprints = Arrays.copyOf(this.fingerprints, this.fingerprints.length * 2);
+            }
+            System.arraycopy(fingerprint, 0, this.fingerprints, offset, this.words);
+
+            for (int table = 0; table < this.tables.length; table++) {
+                this.tables[table].add(key(fingerprint, table), doc);
+            }
+            return doc;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * query
+     *
+     * @param fingerprint
+     * @param maxDistance largest distance of the results (at most the one of the index)
+     * @return indexed documents within maxDistance bits of the fingerprint, with their estimated cosine similarity,
+     * the most similar first
+     */
+    public List<OnlineLshIndex.Match> query(long[] fingerprint, int maxDistance) {
+        checkLength(fingerprint);
+        if (maxDistance > this.maxDistance) {
+            throw new IllegalArgumentException("The index answers up to distance " + this.maxDistance + ": " + maxDistance);
+        }
+        this.lock.readLock().lock();
+        try {
+            LongHashSet seen = new LongHashSet();
+            List<OnlineLshIndex.Match> matches = new ArrayList<>();
+            for (int table = 0; table < this.tables.length; table++) {
+                this.tables[table].forEachDocument(key(fingerprint, table), doc -> {
+                    if (seen.add(doc)) {
+                        int distance = distance(fingerprint, doc);
+                        if (distance <= maxDistance) {
+                            matches.add(new OnlineLshIndex.Match(doc, SimHash.cosine(distance, this.bits)));
+                        }
+                    }
+                });
+            }
+            matches.sort((match1, match2) -> Float.compare(match2.getSimilarity(), match1.getSimilarity()));
+            return matches;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * getFingerprint
+     *
+     * @param doc
+     * @return copy of the fingerprint of an indexed document
+     */
+    public long[] getFingerprint(int doc) {
+        this.lock.readLock().lock();
+        try {
+            int offset = (doc - 1) * this.words;
+            return Arrays.copyOfRange(this.fingerprints, offset, offset + this.words);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int getNumberOfDocuments() {
+        this.lock.readLock().lock();
+        try {
+            return this.numberOfDocuments;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int getMaxDistance() {
+        return this.maxDistance;
+    }
+
+    /**
+     * getNumberOfTables
+     *
+     * @return number of tables probed by a query
+     */
+    public int getNumberOfTables() {
+        return this.tables.length;
+    }
+
+    /**
+     * getKeyBits
+     *
+     * @return number of fingerprint bits in the key of a table (the smallest one if the blocks differ in size)
+     */
+    public int getKeyBits() {
+        int blocks = this.blockStarts.length - 1;
+        return (blocks - this.maxDistance) * (this.bits / blocks);
+    }
+
+    // hash of the bits of the blocks of a table, together with the table number
+    private long key(long[] fingerprint, int table) {
+        long key = table;
+        for (int block : this.tableBlocks[table]) {
+            int start = this.blockStarts[block];
+            int end = this.blockStarts[block + 1];
+            while (start < end) {
+                int word = start >>> 6;
+                int shift = start & 63;
+                int length = Math.min(64 - shift, end - start);
+                long value = fingerprint[word] >>> shift;
+                if (length < 64) {
+                    value &= (1L << length) - 1;
+                }
+                key = RollingShingleHasher.mix(key * 0x100000001b3L ^ value);
+                start += length;
+            }
+        }
+        return key;
+    }
+
+    // C(n, k), or a number larger than MAX_TABLES when it is larger (C(n - k + i, i) grows with i)
+    private static long combinations(int n, int k) {
+        k = Math.min(k, n - k);
+        long combinations = 1;
+        for (int i = 1; i <= k && combinations <= MAX_TABLES; i++) {
+            combinations = combinations * (n - k + i) / i;
+        }
+        return combinations;
+    }
+
+    // distance between the fingerprint and the one of an indexed document
+    private int distance(long[] fingerprint, int doc) {
+        int offset = (doc - 1) * this.words;
+        int distance = 0;
+        for (int word = 0; word < this.words; word++) {
+            distance += Long.bitCount(fingerprint[word] ^ this.fingerprints[offset + word]);
+        }
+        return distance;
+    }
+
+    private void checkLength(long[] fingerprint) {
+        if (fingerprint.length != this.words) {
+            throw new IllegalArgumentException("Fingerprint of " + fingerprint.length * 64 + " bits instead of " + this.bits);
+        }
+    }
+}
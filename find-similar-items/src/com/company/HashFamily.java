@@ -0,0 +1,158 @@
+package com.company;
+
+/**
+ * HashFamily
+ *
+ * Family of universal hash functions h(x) = (a * x + b) mod p with the Mersenne prime p = 2^61 - 1,
+ * computed in long arithmetic (no BigInteger, no allocation).
+ *
+ * The parameters a and b of each function are drawn from a SplitMix64 sequence started from the seed,
+ * so the same seed gives the same functions on every run and on every machine.
+ */
+public class HashFamily {
+
+    /**
+     * MERSENNE_PRIME: 2^61 - 1
+     */
+    public static final long MERSENNE_PRIME = (1L << 61) - 1;
+
+    /**
+     * HASH_BITS: number of bits of the values returned by the hash functions (they are non negative ints)
+     */
+    public static final int HASH_BITS = 31;
+
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * a, b: parameters of each hash function (1 <= a < p, 0 <= b < p)
+     */
+    private final long[] a, b;
+
+    /**
+     * seed: the seed the parameters have been drawn from
+     */
+    private final long seed;
+
+    /**
+     * HashFamily constructor
+     *
+     * @param numberOfHashFunction
+     * @param seed
+     */
+    public HashFamily(int numberOfHashFunction, long seed) {
+        this.seed = seed;
+        this.a = new long[numberOfHashFunction];
+        this.b = new long[numberOfHashFunction];
+
+        long state = seed;
+        for (int i = 0; i < numberOfHashFunction; i++) {
+            do {
+                state += GOLDEN_GAMMA;
+                this.a[i] = splitMix64(state) >>> 3;
+            } while (this.a[i] == 0 || this.a[i] >= MERSENNE_PRIME);
+            do {
+                state += GOLDEN_GAMMA;
+                this.b[i] = splitMix64(state) >>> 3;
+            } while (this.b[i] >= MERSENNE_PRIME);
+        }
+    }
+
+    /**
+     * hash
+     *
+     * @param function index of the hash function
+     * @param x
+     * @return hash value in [0, 2^31)
+     */
+    public int hash(int function, long x) {
+        return hashReduced(function, reduce(x));
+    }
+
+    /**
+     * hashAll
+     *
+     * Computes every function of the family on the same value
+     *
+     * @param x
+     * @param result array of size() elements
+     */
+    public void hashAll(long x, int[] result) {
+        long reduced = reduce(x);
+        for (int i = 0; i < this.a.length; i++) {
+            result[i] = hashReduced(i, reduced);
+        }
+    }
+
+    /**
+     * size
+     *
+     * @return number of hash functions
+     */
+    public int size() {
+        return this.a.length;
+    }
+
+    /**
+     * getSeed
+     *
+     * @return the seed of the family
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * reduce
+     *
+     * @param x any 64-bit value (taken as unsigned)
+     * @return x mod (2^61 - 1)
+     */
+    public static long reduce(long x) {
+        long r = (x & MERSENNE_PRIME) + (x >>> 61);
+        return r >= MERSENNE_PRIME ? r - MERSENNE_PRIME : r;
+    }
+
+    /**
+     * mulMod
+     *
+     * @param x < 2^61 - 1
+     * @param y < 2^61 - 1
+     * @return x * y mod (2^61 - 1), without overflow
+     */
+    public static long mulMod(long x, long y) {
+        long xHigh = x >>> 32, xLow = x & 0xFFFFFFFFL;
+        long yHigh = y >>> 32, yLow = y & 0xFFFFFFFFL;
+
+        // x * y = high * 2^64 + middle * 2^32 + low, and 2^61 = 1 (mod p)
+        long high = xHigh * yHigh;
+        long middle = xHigh * yLow + xLow * yHigh;
+        long low = xLow * yLow; // unsigned
+
+        long sum = (high << 3)
+                + (middle >>> 29) + ((middle & 0x1FFFFFFFL) << 32)
+                + (low >>> 61) + (low & MERSENNE_PRIME);
+        return reduce(sum);
+    }
+
+    /**
+     * splitMix64
+     *
+     * @param state
+     * @return pseudo random value for that state
+     */
+    public static long splitMix64(long state) {
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // (a * x + b) mod p, keeping the 31 most significant bits of the 61-bit result
+    private int hashReduced(int function, long x) {
+        long h = mulMod(this.a[function], x) + this.b[function];
+        if (h >= MERSENNE_PRIME) {
+            h -= MERSENNE_PRIME;
+        }
+        return (int) (h >>> (61 - HASH_BITS));
+    }
+}
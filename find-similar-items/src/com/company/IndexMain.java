@@ -0,0 +1,171 @@
+package com.company;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IndexMain
+ *
+ * Entry point of the persistent LSH index (see PersistentLshIndex): documents are added to an index folder
+ * by one process and queried by later ones, which only map the segments instead of recomputing the signatures.
+ *
+ *   add &lt;k&gt; &lt;mode&gt; &lt;index folder&gt; &lt;input folder&gt; [threshold] [seed] [scheme]
+ *   query &lt;k&gt; &lt;mode&gt; &lt;index folder&gt; &lt;threshold&gt; &lt;file&gt;...
+ *   compact &lt;index folder&gt;
+ *
+ * The threshold, seed and scheme of add are only used when the index is created, the later runs use the ones
+ * of the segments. k and mode are recorded in the segments too, and a run with other ones is refused.
+ * The path of each indexed document is kept in documents.txt, in the index folder (line d is document d).
+ * The paths are written before the segment of their documents: the lines past the documents of the index
+ * (left by a run stopped in between) are ignored, and dropped by the next add.
+ */
+public class IndexMain {
+
+    /**
+     * SIGNATURE_LENGTH: number of rows of the signatures of a new index
+     * DEFAULT_THRESHOLD: similarity the bands and rows of a new index are planned for
+     * DOCUMENTS: file with the path of each indexed document
+     */
+    private static final int SIGNATURE_LENGTH = 100;
+    private static final double DEFAULT_THRESHOLD = 0.8;
+    private static final String DOCUMENTS = "documents.txt";
+
+    // shingle the files of the input folder and append their signatures to the index
+    private static void add(String[] args) throws IOException {
+        int k = Integer.parseInt(args[1]);
+        ShinglingMode mode = ShinglingMode.fromArgument(args[2]);
+        File folder = new File(args[3]);
+        File input = new File(args[4]);
+
+        PersistentLshIndex index;
+        if (PersistentLshIndex.exists(folder)) {
+            index = PersistentLshIndex.open(folder, k, mode);
+        } else {
+            double threshold = args.length > 5 ? Double.parseDouble(args[5]) : DEFAULT_THRESHOLD;
+            long seed = args.length > 6 ? Long.parseLong(args[6]) : Shingling.DEFAULT_SEED;
+            SignatureScheme scheme = args.length > 7 ? SignatureScheme.fromArgument(args[7]) : SignatureScheme.K_HASH;
+            index = new PersistentLshIndex(folder, k, mode, SIGNATURE_LENGTH, LshParameters.optimal(SIGNATURE_LENGTH, threshold),
+                    scheme, seed);
+        }
+
+        File[] files = input.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Cannot list the input folder: " + input);
+        }
+        Arrays.sort(files);
+
+        Shingling shingling = new Shingling(k, mode);
+        int[] docs;
+        try (IngestionPipeline pipeline = new IngestionPipeline(shingling)) {
+            docs = pipeline.ingest(Arrays.asList(files));
+        }
+        List<long[]> shingleSets = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            if (docs[i] > 0) {
+                shingleSets.add(shingling.getDocumentShingles(docs[i]));
+                paths.add(files[i].getPath());
+            }
+        }
+        SignatureMatrix signatures = index.getMinHasher().signatures(shingleSets, true);
+
+        List<String> indexed = readPaths(folder, index.getNumberOfDocuments());
+        if (indexed.size() != index.getNumberOfDocuments()) {
+            throw new IOException(DOCUMENTS + " has " + indexed.size() + " paths for "
+                    + index.getNumberOfDocuments() + " documents: " + folder);
+        }
+        indexed.addAll(paths);
+        writePaths(folder, indexed);
+        int firstDoc = index.append(signatures);
+
+        Main.console("ADDED:", paths.size() + " documents, from " + firstDoc + " to " + (firstDoc + paths.size() - 1));
+        Main.console("INDEX:", index.getNumberOfDocuments() + " documents in " + index.getNumberOfSegments() + " segments");
+    }
+
+    // find the indexed documents similar to each file
+    private static void query(String[] args) throws IOException {
+        int k = Integer.parseInt(args[1]);
+        ShinglingMode mode = ShinglingMode.fromArgument(args[2]);
+        File folder = new File(args[3]);
+        double threshold = Double.parseDouble(args[4]);
+
+        PersistentLshIndex index = PersistentLshIndex.open(folder, k, mode);
+        List<String> paths = readPaths(folder, index.getNumberOfDocuments());
+        Shingling shingling = new Shingling(k, mode);
+        MinHasher minHasher = index.getMinHasher();
+        int[] signature = new int[minHasher.length()];
+        for (int i = 5; i < args.length; i++) {
+            minHasher.signature(shingling.shingleSet(DocumentReader.read(new File(args[i]))), signature, 0);
+            Main.console("QUERY:", args[i]);
+            for (OnlineLshIndex.Match match : index.query(signature, threshold)) {
+                String path = match.getDoc() <= paths.size() ? paths.get(match.getDoc() - 1) : "";
+                Main.console("\t" + match.getDoc() + "\t" + path + "\tESTIMATE:", match.getSimilarity());
+            }
+        }
+    }
+
+    // rewrite the segments of the index in a single one
+    private static void compact(String[] args) throws IOException {
+        PersistentLshIndex index = PersistentLshIndex.open(new File(args[1]));
+        int segments = index.getNumberOfSegments();
+        index.compact();
+        Main.console("COMPACTED:", segments + " segments in " + index.getNumberOfSegments()
+                + ", " + index.getNumberOfDocuments() + " documents");
+    }
+
+    // the paths of the first documents of the index (fewer if documents.txt is shorter or missing)
+    private static List<String> readPaths(File folder, int numberOfDocuments) throws IOException {
+        File documents = new File(folder, DOCUMENTS);
+        if (!documents.isFile()) {
+            return new ArrayList<>();
+        }
+        List<String> paths = Files.readAllLines(documents.toPath(), StandardCharsets.UTF_8);
+        return new ArrayList<>(paths.subList(0, Math.min(paths.size(), numberOfDocuments)));
+    }
+
+    // replace documents.txt, written next to it and then renamed
+    private static void writePaths(File folder, List<String> paths) throws IOException {
+        File documents = new File(folder, DOCUMENTS);
+        File temporary = new File(folder, DOCUMENTS + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            Writer output = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            for (String path : paths) {
+                output.write(path);
+                output.write('\n');
+            }
+            output.flush();
+            stream.getChannel().force(true);
+        }
+        Files.move(temporary.toPath(), documents.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 5 && args[0].equals("add")) {
+                add(args);
+            } else if (args.length >= 6 && args[0].equals("query")) {
+                query(args);
+            } else if (args.length == 2 && args[0].equals("compact")) {
+                compact(args);
+            } else {
+                System.err.println("Usage: add <k> <mode> <index folder> <input folder> [threshold] [seed] [scheme]");
+                System.err.println("       query <k> <mode> <index folder> <threshold> <file>...");
+                System.err.println("       compact <index folder>");
+                System.exit(-1);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
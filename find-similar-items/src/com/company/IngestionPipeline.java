@@ -0,0 +1,147 @@
+package com.company;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IngestionPipeline
+ *
+ * Reads, normalizes and shingles several files concurrently on a bounded pool of workers.
+ * The shingle sets are added to the Shingling in the order of the files, so the document ids
+ * are the same as with a sequential run (the first file is document 1).
+ * At most maxInFlight files are read or waiting to be added at the same time, which bounds the memory used.
+ * A file that cannot be read is reported and skipped, as the line by line reader of Main did: the next files
+ * take its document id. A document that cannot be added (e.g. the external index cannot spill) stops the ingestion.
+ */
+public class IngestionPipeline implements AutoCloseable {
+
+    /**
+     * shingling: the index the documents are added to
+     * workers: the pool reading and shingling the files
+     * maxInFlight: maximum number of files being processed or waiting to be added
+     */
+    private final Shingling shingling;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+
+    /**
+     * IngestionPipeline constructor
+     *
+     * @param shingling
+     * @param threads number of workers
+     * @param maxInFlight maximum number of files processed at the same time
+     */
+    public IngestionPipeline(Shingling shingling, int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("threads and maxInFlight must be positive");
+        }
+        this.shingling = shingling;
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * IngestionPipeline constructor
+     *
+     * One worker per processor, at most four files per worker in flight
+     *
+     * @param shingling
+     */
+    public IngestionPipeline(Shingling shingling) {
+        this(shingling, Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * ingest
+     *
+     * @param files
+     * @return id of the document of each file, 0 for a file that could not be read
+     * @throws IOException if the ingestion is interrupted
+     */
+    public int[] ingest(List<File> files) throws IOException {
+        return ingest(files, this.shingling::addShingleHistogram);
+    }
+
+    /**
+     * ingest
+     *
+     * Out-of-core ingestion: the files are shingled by the Shingling, but their shingles are added to the external
+     * index instead (the Shingling keeps no document)
+     *
+     * @param files
+     * @param index
+     * @return id of the document of each file in the external index, 0 for a file that could not be read
+     * @throws IOException if the ingestion is interrupted or the index cannot spill its pairs
+     */
+    public int[] ingest(List<File> files, ExternalShingleIndex index) throws IOException {
+        return ingest(files, histogram -> index.addShingleSet(histogram.getShingles()));
+    }
+
+    @Override
+    public void close() {
+        this.workers.shutdown();
+    }
+
+    // shingle the files in parallel and add them in order
+    private int[] ingest(List<File> files, Sink sink) throws IOException {
+        int[] docs = new int[files.size()];
+        ArrayDeque<Future<ShingleHistogram>> inFlight = new ArrayDeque<>();
+        int added = 0;
+
+        try {
+            for (File file : files) {
+                if (inFlight.size() == this.maxInFlight) {
+                    docs[added] = add(inFlight.poll(), files.get(added), sink);
+                    added++;
+                }
+                inFlight.add(this.workers.submit(() -> this.shingling.shingleHistogram(DocumentReader.read(file))));
+            }
+            while (!inFlight.isEmpty()) {
+                docs[added] = add(inFlight.poll(), files.get(added), sink);
+                added++;
+            }
+        } finally {
+            for (Future<ShingleHistogram> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        return docs;
+    }
+
+    // wait for the oldest file in flight and add it, or report it and return 0 if it could not be read
+    private static int add(Future<ShingleHistogram> future, File file, Sink sink) throws IOException {
+        ShingleHistogram histogram;
+        try {
+            histogram = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ingestion interrupted", e);
+        } catch (ExecutionException e) {
+            System.err.println("SKIPPED FILE: " + file);
+            e.getCause().printStackTrace();
+            return 0;
+        }
+        return sink.add(histogram);
+    }
+
+    /**
+     * Sink
+     *
+     * Where the shingled documents are added, in order of the files
+     */
+    private interface Sink {
+        int add(ShingleHistogram histogram) throws IOException;
+    }
+}
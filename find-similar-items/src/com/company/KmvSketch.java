@@ -0,0 +1,172 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * KmvSketch
+ *
+ * K minimum values (bottom-k) sketch of a shingle set: the k smallest hashes of its shingles.
+ * The sketch estimates the number of distinct shingles, and two sketches estimate the size of the union,
+ * the Jaccard similarity and the containment of the two sets, without the sets themselves.
+ * Sketches are mergeable: the sketch of a union is the bottom-k of the two sketches.
+ * A set with less than k shingles keeps all its hashes, so its estimates are exact.
+ * Only sketches with the same k and the same seed can be combined: the hashes of two seeds are unrelated.
+ */
+public class KmvSketch {
+
+    /**
+     * RANGE: the hashes are in [0, 2^63)
+     */
+    private static final double RANGE = 0x1.0p63;
+
+    /**
+     * k: maximum number of values kept
+     * seed: seed of the hash of the shingles
+     * values: the smallest hashes, in increasing order
+     */
+    private final int k;
+    private final long seed;
+    private final long[] values;
+
+    private KmvSketch(int k, long seed, long[] values) {
+        this.k = k;
+        this.seed = seed;
+        this.values = values;
+    }
+
+    /**
+     * of
+     *
+     * @param shingleSet distinct shingle ids
+     * @param k number of values kept
+     * @param seed seed of the hash of the shingles (the sketches compared must have the same)
+     * @return sketch of the set
+     */
+    public static KmvSketch of(long[] shingleSet, int k, long seed) {
+        if (k < 2) {
+            throw new IllegalArgumentException("k must be at least 2: " + k);
+        }
+        long salt = HashFamily.splitMix64(seed);
+        long[] hashes = new long[shingleSet.length];
+        for (int i = 0; i < shingleSet.length; i++) {
+            hashes[i] = RollingShingleHasher.mix(shingleSet[i] ^ salt) >>> 1;
+        }
+        Arrays.sort(hashes);
+        // distinct shingles almost never share a 63-bit hash, but the values of a sketch must be distinct
+        return new KmvSketch(k, seed, bottom(hashes, hashes.length, k));
+    }
+
+    /**
+     * cardinality
+     *
+     * @return estimated number of distinct shingles: (k - 1) / (k-th smallest hash), exact below k shingles
+     */
+    public double cardinality() {
+        if (this.values.length < this.k) {
+            return this.values.length;
+        }
+        return (this.k - 1) / (this.values[this.k - 1] / RANGE);
+    }
+
+    /**
+     * union
+     *
+     * @param other sketch with the same k and seed
+     * @return sketch of the union of the two sets
+     */
+    public KmvSketch union(KmvSketch other) {
+        checkCompatible(other);
+        long[] merged = new long[this.values.length + other.values.length];
+        int i = 0, j = 0, size = 0;
+        while (i < this.values.length || j < other.values.length) {
+            if (j == other.values.length || (i < this.values.length && this.values[i] <= other.values[j])) {
+                merged[size++] = this.values[i++];
+            } else {
+                merged[size++] = other.values[j++];
+            }
+        }
+        return new KmvSketch(this.k, this.seed, bottom(merged, size, this.k));
+    }
+
+    /**
+     * jaccard
+     *
+     * The bottom-k of the union is a uniform sample of the union: the fraction of it found in both sketches
+     * estimates the Jaccard similarity
+     *
+     * @param other sketch with the same k and seed
+     * @return estimated Jaccard similarity of the two sets
+     */
+    public double jaccard(KmvSketch other) {
+        KmvSketch union = union(other);
+        if (union.values.length == 0) {
+            return 0;
+        }
+        int inBoth = 0;
+        for (long value : union.values) {
+            if (Arrays.binarySearch(this.values, value) >= 0 && Arrays.binarySearch(other.values, value) >= 0) {
+                inBoth++;
+            }
+        }
+        return (double) inBoth / union.values.length;
+    }
+
+    /**
+     * intersectionSize
+     *
+     * @param other sketch with the same k and seed
+     * @return estimated number of shingles in common: Jaccard similarity * size of the union
+     */
+    public double intersectionSize(KmvSketch other) {
+        return jaccard(other) * union(other).cardinality();
+    }
+
+    /**
+     * containment
+     *
+     * @param other sketch with the same k and seed
+     * @return estimated fraction of the shingles of this set that are also in the other one
+     */
+    public double containment(KmvSketch other) {
+        double cardinality = cardinality();
+        return cardinality == 0 ? 0 : Math.min(1, intersectionSize(other) / cardinality);
+    }
+
+    /**
+     * getValues
+     *
+     * @return the smallest hashes, in increasing order
+     */
+    public long[] getValues() {
+        return this.values;
+    }
+
+    public int getK() {
+        return this.k;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    // the k smallest distinct values of a sorted array
+    private static long[] bottom(long[] sorted, int length, int k) {
+        long[] bottom = new long[Math.min(length, k)];
+        int size = 0;
+        for (int i = 0; i < length && size < k; i++) {
+            if (size == 0 || sorted[i] != bottom[size - 1]) {
+                bottom[size++] = sorted[i];
+            }
+        }
+        return size == bottom.length ? bottom : Arrays.copyOf(bottom, size);
+    }
+
+    private void checkCompatible(KmvSketch other) {
+        if (other.k != this.k) {
+            throw new IllegalArgumentException("Sketches of different sizes: " + this.k + " and " + other.k);
+        }
+        if (other.seed != this.seed) {
+            throw new IllegalArgumentException("Sketches of different seeds: " + this.seed + " and " + other.seed);
+        }
+    }
+}
@@ -1,91 +1,126 @@
 package com.company;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-
 public class LSH {
 
-    private Integer[][] signature = null;
-    private Map<Integer, ArrayList<Integer>> buckets = new HashMap();
+    private SignatureMatrix signature = null;
+    private LshParameters parameters = null;
+
+    // number of buckets of each size (in powers of two, see BandTable.addBucketSizes) in each band of the last findCandidates
+    private long[][] bucketSizeHistograms = new long[0][];
 
 
     /**
      * Constructor
      *
-     * It receives a matrix of signatures: each column represent a document
+     * It receives a matrix of signatures: the signature of each document is contiguous
      * @param minHashSignature
      */
-    public LSH(Integer[][] minHashSignature) {
+    public LSH(SignatureMatrix minHashSignature) {
         this.signature = minHashSignature;
     }
 
+    /**
+     * plan method
+     *
+     * Chooses the bands and rows for the threshold from the length of the signatures (see LshParameters),
+     * so that the expected recall and number of candidates can be checked before running findCandidates.
+     *
+     * @param treshold
+     * @return the parameters that will be used by findCandidates(treshold)
+     */
+    public LshParameters plan(double treshold) {
+        return LshParameters.optimal(this.signature.length(), treshold);
+    }
+
     /**
      *
      * findCandidates method
      *
-     * This method applies the algorithm seen during the lectures to create buckets and find similarities
+     * This method applies the algorithm seen during the lectures to create buckets and find similarities:
+     * the number of bands and rows is chosen according to the threshold
      * @param treshold
-     * @return
+     * @return set of candidate pairs (see DocumentPairs)
      */
-    public ArrayList<String> findCandidates(double treshold) {
+    public LongHashSet findCandidates(double treshold) {
+        return findCandidates(plan(treshold));
+    }
 
-        // I assume I create 100 hashFunction and therefore 100 rows
-        // I have 20 bands of 5 rows each
+    /**
+     *
+     * findCandidates method
+     *
+     * Each band is hashed directly from the signature values into a 64-bit key, the documents with the same key
+     * end up in the same bucket and every pair of documents in a bucket becomes a candidate.
+     * The bands are processed one at a time, so only the buckets of one band are in memory.
+     *
+     * @param parameters bands and rows (bands * rows cannot be greater than the length of the signatures)
+     * @return set of candidate pairs (see DocumentPairs)
+     */
+    public LongHashSet findCandidates(LshParameters parameters) {
 
-        int b = 20; // bands
-        int r = 5; // rows per band
-        int numberOfElements = signature[0].length;
+        int b = parameters.getBands(); // bands
+        int r = parameters.getRows(); // rows per band
+        if (b * r > signature.length()) {
+            throw new IllegalArgumentException("Not enough rows in the signatures for " + parameters);
+        }
+        this.parameters = parameters;
+        this.bucketSizeHistograms = new long[b][32];
 
+        int numberOfElements = signature.getNumberOfDocuments();
+        // the keys of the current band (see BandHasher.hashBand)
+        long[] keys = new long[numberOfElements];
+        LongHashSet candidates = new LongHashSet();
 
         // For each band
-        for (int i = 0; i < signature.length-r; i=i+r) {
-            // For each column (document) inside the band
-            for (int j = 0; j < numberOfElements; j++) {
-                String columnString = "";
-                // Create a string which is a concatenation of all the signature in that band
-                for (int k = i; k < i+r; k++) {
-                    columnString += signature[k][j];
-                }
-                // put the document in that bucket, remember to add 1 since we always saved them starting from 1
-                int hashedColumn = columnString.hashCode();
-                if (buckets.containsKey(hashedColumn)) {
-                    ArrayList<Integer> documentsInThisBucket = buckets.get(hashedColumn);
-                    if (!documentsInThisBucket.contains(j+1)) {
-                        documentsInThisBucket.add(j+1);
-                        buckets.replace(hashedColumn, documentsInThisBucket);
-                    }
-                } else {
-                    ArrayList<Integer> documentsInThisBucket = new ArrayList<>();
-                    documentsInThisBucket.add(j+1);
-                    buckets.put(hashedColumn, documentsInThisBucket);
-                }
+        for (int band = 0; band < b; band++) {
+            BandTable buckets = new BandTable(numberOfElements);
+            BandHasher.hashBand(signature, band, r, keys);
+
+            // For each column (document) inside the band: put the document in the bucket of its band
+            // (documents start from 1)
+            for (int doc = 1; doc <= numberOfElements; doc++) {
+                buckets.add(keys[doc - 1], doc);
             }
-        }
 
-        // look inside the buckets to check if some of the documents ended up in the same.
-        ArrayList<String> candidatesCompare = new ArrayList<>();
-        for (Map.Entry<Integer, ArrayList<Integer>> bucket: buckets.entrySet()) {
-            if(bucket.getValue().size()>1) {
-                String compares = "";
+            buckets.addBucketSizes(this.bucketSizeHistograms[band]);
 
-                for (int i = 0; i < bucket.getValue().size(); i++) {
-                    if (i != 0) {
-                        compares += "-";
+            // look inside the buckets to check if some of the documents ended up in the same.
+            buckets.forEachBucket(2, (docs, size) -> {
+                for (int i = 0; i < size; i++) {
+                    for (int j = i + 1; j < size; j++) {
+                        candidates.add(DocumentPairs.encode(docs[i], docs[j]));
                     }
-                    compares += bucket.getValue().get(i);
-                }
-                if (!candidatesCompare.contains(compares)) {
-                    candidatesCompare.add(compares);
                 }
-            }
+            });
+        }
+        return candidates;
+    }
+
+    /**
+     * getParameters
+     *
+     * @return bands and rows used by the last call of findCandidates
+     */
+    public LshParameters getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * getBucketSizeHistograms
+     *
+     * @return number of buckets of each band by size, found by the last call of findCandidates:
+     * element [band][i] counts the buckets of the band with more than 2^(i-1) and at most 2^i documents
+     */
+    public long[][] getBucketSizeHistograms() {
+        long[][] histograms = new long[this.bucketSizeHistograms.length][];
+        for (int band = 0; band < histograms.length; band++) {
+            histograms[band] = this.bucketSizeHistograms[band].clone();
         }
-        return candidatesCompare;
+        return histograms;
     }
 
     // utility method to get the lenght of the matrix
     public int getSignatureLenght() {
-        return this.signature.length;
+        return this.signature.length();
     }
 }
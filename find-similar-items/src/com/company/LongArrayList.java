@@ -0,0 +1,79 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * LongArrayList
+ *
+ * Growable array of primitive longs (used to collect the shingle ids of a document).
+ */
+public class LongArrayList {
+
+    private long[] values;
+    private int size;
+
+    /**
+     * LongArrayList constructor
+     *
+     * @param capacity
+     */
+    public LongArrayList(int capacity) {
+        this.values = new long[Math.max(capacity, 4)];
+    }
+
+    /**
+     * add
+     *
+     * @param value
+     */
+    public void add(long value) {
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * get
+     *
+     * @param index
+     * @return value at that index
+     */
+    public long get(int index) {
+        return this.values[index];
+    }
+
+    /**
+     * size
+     *
+     * @return number of values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * clear
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * toSortedSet
+     *
+     * @return the values sorted in increasing order and without duplicates
+     */
+    public long[] toSortedSet() {
+        return ShingleSets.sortedSet(this.values, this.size);
+    }
+
+    /**
+     * toArray
+     *
+     * @return the values, in insertion order
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+}
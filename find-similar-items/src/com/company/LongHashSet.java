@@ -0,0 +1,156 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * LongHashSet
+ *
+ * Set of primitive longs (open addressing with linear probing).
+ * The value 0 marks the free slots, so it is kept aside in a flag.
+ */
+public class LongHashSet {
+
+    /**
+     * MAX_LOAD: the table is doubled when it is more than half full
+     */
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] values;
+    private int size, mask;
+    private boolean containsZero;
+
+    /**
+     * LongHashSet constructor
+     */
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * LongHashSet constructor
+     *
+     * @param expectedSize
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * add
+     *
+     * @param value
+     * @return true if the value was not in the set
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (this.containsZero) {
+                return false;
+            }
+            this.containsZero = true;
+            this.size++;
+            return true;
+        }
+
+        int slot = find(value);
+        if (this.values[slot] == value) {
+            return false;
+        }
+        this.values[slot] = value;
+        if (++this.size > MAX_LOAD * this.values.length) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * contains
+     *
+     * @param value
+     * @return true if the value is in the set
+     */
+    public boolean contains(long value) {
+        if (value == 0) {
+            return this.containsZero;
+        }
+        return this.values[find(value)] == value;
+    }
+
+    /**
+     * size
+     *
+     * @return number of values in the set
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * forEach
+     *
+     * @param consumer receives every value of the set (in no particular order)
+     */
+    public void forEach(LongConsumer consumer) {
+        if (this.containsZero) {
+            consumer.accept(0);
+        }
+        for (long value : this.values) {
+            if (value != 0) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    /**
+     * toArray
+     *
+     * @return the values of the set (in no particular order)
+     */
+    public long[] toArray() {
+        long[] result = new long[this.size];
+        int position = 0;
+        if (this.containsZero) {
+            result[position++] = 0;
+        }
+        for (long value : this.values) {
+            if (value != 0) {
+                result[position++] = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * toSortedArray
+     *
+     * @return the values of the set in increasing order
+     */
+    public long[] toSortedArray() {
+        long[] result = toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    // slot of the value, or the free slot where it should be inserted
+    private int find(long value) {
+        int slot = (int) RollingShingleHasher.mix(value) & this.mask;
+        while (this.values[slot] != 0 && this.values[slot] != value) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    // double the capacity and insert all the values again
+    private void resize() {
+        long[] old = this.values;
+        this.values = new long[old.length * 2];
+        this.mask = this.values.length - 1;
+        for (long value : old) {
+            if (value != 0) {
+                this.values[find(value)] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.company;
+
+/**
+ * LshParameters
+ *
+ * Number of bands b and rows per band r used by the LSH.
+ * Two documents with Jaccard similarity s end up in the same bucket of at least one band with probability
+ *
+ *   P(s) = 1 - (1 - s^r)^b
+ *
+ * (the S-curve). Given a threshold t, the pairs below t that become candidates are false positives
+ * (area under P on [0, t]) and the pairs above t that do not become candidates are false negatives
+ * (area above P on [t, 1]): the planner chooses the b and r that minimise the weighted sum of the two areas.
+ */
+public class LshParameters {
+
+    /**
+     * INTEGRATION_STEPS: number of intervals used to integrate the S-curve
+     */
+    private static final int INTEGRATION_STEPS = 200;
+
+    /**
+     * bands: number of bands
+     * rows: number of rows per band
+     */
+    private final int bands, rows;
+
+    /**
+     * LshParameters constructor
+     *
+     * @param bands
+     * @param rows
+     */
+    public LshParameters(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("Bands and rows must be positive: b = " + bands + ", r = " + rows);
+        }
+        this.bands = bands;
+        this.rows = rows;
+    }
+
+    /**
+     * optimal
+     *
+     * Same weight for false positives and false negatives
+     *
+     * @param signatureLength
+     * @param threshold
+     * @return the parameters that minimise the error around the threshold
+     */
+    public static LshParameters optimal(int signatureLength, double threshold) {
+        return optimal(signatureLength, threshold, 0.5, 0.5);
+    }
+
+    /**
+     * optimal
+     *
+     * Tries every b and r with b * r <= signatureLength and keeps the ones with the smallest
+     * falsePositiveWeight * falsePositiveArea + falseNegativeWeight * falseNegativeArea.
+     * A larger falseNegativeWeight favours recall, a larger falsePositiveWeight favours fewer candidates.
+     *
+     * @param signatureLength
+     * @param threshold
+     * @param falsePositiveWeight
+     * @param falseNegativeWeight
+     * @return the parameters that minimise the weighted error
+     */
+    public static LshParameters optimal(int signatureLength, double threshold,
+                                        double falsePositiveWeight, double falseNegativeWeight) {
+        if (threshold <= 0 || threshold >= 1) {
+            throw new IllegalArgumentException("The threshold must be in (0, 1): " + threshold);
+        }
+
+        LshParameters best = null;
+        double minError = Double.MAX_VALUE;
+        for (int bands = 1; bands <= signatureLength; bands++) {
+            for (int rows = 1; rows <= signatureLength / bands; rows++) {
+                LshParameters candidate = new LshParameters(bands, rows);
+                double error = falsePositiveWeight * candidate.falsePositiveArea(threshold)
+                        + falseNegativeWeight * candidate.falseNegativeArea(threshold);
+                if (error < minError) {
+                    minError = error;
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * probability
+     *
+     * @param similarity
+     * @return probability that two documents with this similarity become candidates
+     */
+    public double probability(double similarity) {
+        return 1 - Math.pow(1 - Math.pow(similarity, this.rows), this.bands);
+    }
+
+    /**
+     * falsePositiveArea
+     *
+     * @param threshold
+     * @return integral of P(s) on [0, threshold]
+     */
+    public double falsePositiveArea(double threshold) {
+        return integrate(0, threshold, false);
+    }
+
+    /**
+     * falseNegativeArea
+     *
+     * @param threshold
+     * @return integral of 1 - P(s) on [threshold, 1]
+     */
+    public double falseNegativeArea(double threshold) {
+        return integrate(threshold, 1, true);
+    }
+
+    /**
+     * expectedRecall
+     *
+     * @param threshold
+     * @return average probability of becoming candidates for pairs with similarity above the threshold
+     * (similarities uniformly distributed)
+     */
+    public double expectedRecall(double threshold) {
+        return 1 - falseNegativeArea(threshold) / (1 - threshold);
+    }
+
+    /**
+     * expectedCandidatePairs
+     *
+     * @param numberOfDocuments
+     * @param backgroundSimilarity typical similarity of two unrelated documents
+     * @return expected number of candidate pairs among unrelated documents
+     */
+    public double expectedCandidatePairs(int numberOfDocuments, double backgroundSimilarity) {
+        double pairs = (double) numberOfDocuments * (numberOfDocuments - 1) / 2;
+        return pairs * probability(backgroundSimilarity);
+    }
+
+    /**
+     * minAgreements
+     *
+     * The threshold on the estimated similarity of two signatures, as a number of rows: comparing integers
+     * keeps the documents exactly at the threshold (agreements / length as a float can round below it)
+     *
+     * @param similarity minimum estimated similarity
+     * @param length number of rows of the signatures
+     * @return smallest number of agreeing rows with agreements / length >= similarity
+     */
+    public static int minAgreements(double similarity, int length) {
+        return (int) Math.ceil(similarity * length - 1e-9);
+    }
+
+    /**
+     * approximateThreshold
+     *
+     * @return similarity where the S-curve is steepest: (1/b)^(1/r)
+     */
+    public double approximateThreshold() {
+        return Math.pow(1.0 / this.bands, 1.0 / this.rows);
+    }
+
+    /**
+     * getBands
+     *
+     * @return number of bands
+     */
+    public int getBands() {
+        return this.bands;
+    }
+
+    /**
+     * getRows
+     *
+     * @return number of rows per band
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    @Override
+    public String toString() {
+        return "BANDS: " + this.bands + ", ROWS: " + this.rows
+                + ", APPROXIMATE THRESHOLD: " + String.format("%.3f", approximateThreshold());
+    }
+
+    // trapezoidal integration of P(s) (or 1 - P(s)) on [from, to]
+    private double integrate(double from, double to, boolean complement) {
+        double step = (to - from) / INTEGRATION_STEPS;
+        double area = 0;
+        for (int i = 0; i <= INTEGRATION_STEPS; i++) {
+            double value = probability(from + i * step);
+            if (complement) {
+                value = 1 - value;
+            }
+            area += (i == 0 || i == INTEGRATION_STEPS) ? value / 2 : value;
+        }
+        return area * step;
+    }
+}
@@ -0,0 +1,428 @@
+package com.company;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * LshSegment
+ *
+ * Immutable file with the signatures and the band buckets of a range of documents.
+ * The file is memory-mapped and queried in place (nothing is deserialized):
+ *
+ *   header     MAGIC, VERSION, firstDoc, numberOfDocuments, length, bands, rows, scheme, seed, k, mode
+ *   signatures numberOfDocuments * length ints, the signature of each document is contiguous
+ *   bands      for each band: numberOfDocuments band keys (longs) in increasing order,
+ *              followed by the document of each key (ints)
+ *
+ * A bucket is the run of equal keys of a band, found with a binary search.
+ * k and mode are the shingling of the documents: signatures of shingles of another kind cannot be compared with them.
+ */
+public class LshSegment {
+
+    /**
+     * MAGIC: "LSH1"
+     */
+    private static final int MAGIC = 0x4C534831;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+
+    /**
+     * MAX_SIZE: largest segment file, the positions in the mapped buffer are ints
+     */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * buffer: the mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * firstDoc: id of the first document of the segment, the others follow
+     * numberOfDocuments, length, bands, rows: see the header
+     */
+    private final int firstDoc, numberOfDocuments, length, bands, rows;
+    private final SignatureScheme scheme;
+    private final long seed;
+
+    /**
+     * k, mode: shingling of the documents
+     */
+    private final int k;
+    private final ShinglingMode mode;
+
+    /**
+     * LshSegment constructor
+     *
+     * Maps an existing segment file
+     *
+     * @param file
+     * @throws IOException
+     */
+    public LshSegment(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (this.buffer.capacity() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an LSH segment: " + file);
+        }
+        if (this.buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported LSH segment version " + this.buffer.getInt(4) + ": " + file);
+        }
+        this.firstDoc = this.buffer.getInt(8);
+        this.numberOfDocuments = this.buffer.getInt(12);
+        this.length = this.buffer.getInt(16);
+        this.bands = this.buffer.getInt(20);
+        this.rows = this.buffer.getInt(24);
+        int scheme = this.buffer.getInt(28);
+        this.seed = this.buffer.getLong(32);
+        this.k = this.buffer.getInt(40);
+        int mode = this.buffer.getInt(44);
+        if (scheme < 0 || scheme >= SignatureScheme.values().length) {
+            throw new IOException("Unknown signature scheme " + scheme + " in LSH segment: " + file);
+        }
+        this.scheme = SignatureScheme.values()[scheme];
+        if (mode < 0 || mode >= ShinglingMode.values().length) {
+            throw new IOException("Unknown shingling mode " + mode + " in LSH segment: " + file);
+        }
+        this.mode = ShinglingMode.values()[mode];
+        if (this.numberOfDocuments < 0 || this.k < 1 || this.bands < 1 || this.rows < 1 || (long) this.bands * this.rows > this.length) {
+            throw new IOException("Corrupted LSH segment header: " + file);
+        }
+
+        if (this.buffer.capacity() != size(this.numberOfDocuments, this.length, this.bands)) {
+            throw new IOException("Truncated LSH segment: " + file);
+        }
+    }
+
+    /**
+     * write
+     *
+     * Writes the signatures of the documents firstDoc, firstDoc + 1, ... in a new segment file.
+     * The file is written next to the destination and then renamed, so a segment is never seen half written.
+     *
+     * @param file destination
+     * @param signatures signatures of the documents, one after the other
+     * @param numberOfDocuments
+     * @param firstDoc id of the first document
+     * @param length number of rows of each signature
+     * @param parameters bands and rows
+     * @param scheme how the signatures have been computed
+     * @param seed seed of the hash functions of the signatures
+     * @param k size of the shingles of the documents
+     * @param mode shingling mode of the documents
+     * @throws IOException
+     */
+    public static void write(File file, int[] signatures, int numberOfDocuments, int firstDoc, int length,
+                             LshParameters parameters, SignatureScheme scheme, long seed, int k, ShinglingMode mode)
+            throws IOException {
+        int bands = parameters.getBands();
+        int rows = parameters.getRows();
+        if (size(numberOfDocuments, length, bands) > MAX_SIZE) {
+            throw new IllegalArgumentException("Too many documents for a single segment: " + numberOfDocuments);
+        }
+
+        writeFile(file, output -> {
+            writeHeader(output, firstDoc, numberOfDocuments, length, bands, rows, scheme, seed, k, mode);
+            writeInts(output, signatures, numberOfDocuments * length);
+            long[] keys = new long[numberOfDocuments];
+            int[] docs = new int[numberOfDocuments];
+            for (int band = 0; band < bands; band++) {
+                for (int i = 0; i < numberOfDocuments; i++) {
+                    keys[i] = BandHasher.hash(signatures, i * length + band * rows, rows, band);
+                    docs[i] = firstDoc + i;
+                }
+                writeBand(output, keys, docs);
+            }
+        });
+    }
+
+    /**
+     * merge
+     *
+     * Writes the documents of consecutive segments in a new segment file, streaming them from the mapped segments:
+     * only the keys of one band are in memory (12 bytes per document). The file is written next to the destination
+     * and then renamed, as by write.
+     *
+     * @param file destination
+     * @param segments segments with the same settings, in order of document id and without gaps
+     * @throws IOException
+     */
+    public static void merge(File file, List<LshSegment> segments) throws IOException {
+        LshSegment first = segments.get(0);
+        int numberOfDocuments = 0;
+        for (LshSegment segment : segments) {
+            if (segment.getFirstDoc() != first.firstDoc + numberOfDocuments || segment.length != first.length
+                    || segment.bands != first.bands || segment.rows != first.rows || segment.scheme != first.scheme
+                    || segment.seed != first.seed || segment.k != first.k || segment.mode != first.mode) {
+                throw new IllegalArgumentException("Segments that cannot be merged: first document " + segment.firstDoc);
+            }
+            numberOfDocuments += segment.numberOfDocuments;
+        }
+        if (size(numberOfDocuments, first.length, first.bands) > MAX_SIZE) {
+            throw new IllegalArgumentException("Too many documents for a single segment: " + numberOfDocuments);
+        }
+
+        int total = numberOfDocuments;
+        writeFile(file, output -> {
+            writeHeader(output, first.firstDoc, total, first.length, first.bands, first.rows, first.scheme, first.seed,
+                    first.k, first.mode);
+            byte[] chunk = new byte[1 << 16];
+            for (LshSegment segment : segments) {
+                ByteBuffer signatures = segment.buffer.duplicate();
+                signatures.position(HEADER_SIZE);
+                signatures.limit(HEADER_SIZE + segment.numberOfDocuments * segment.length * 4);
+                while (signatures.hasRemaining()) {
+                    int size = Math.min(chunk.length, signatures.remaining());
+                    signatures.get(chunk, 0, size);
+                    output.write(chunk, 0, size);
+                }
+            }
+            long[] keys = new long[total];
+            int[] docs = new int[total];
+            for (int band = 0; band < first.bands; band++) {
+                int i = 0;
+                for (LshSegment segment : segments) {
+                    int keysOffset = segment.bandOffset(band);
+                    int docsOffset = keysOffset + segment.numberOfDocuments * 8;
+                    for (int j = 0; j < segment.numberOfDocuments; j++, i++) {
+                        keys[i] = segment.buffer.getLong(keysOffset + j * 8);
+                        docs[i] = segment.buffer.getInt(docsOffset + j * 4);
+                    }
+                }
+                writeBand(output, keys, docs);
+            }
+        });
+    }
+
+    /**
+     * size
+     *
+     * @param numberOfDocuments
+     * @param length number of rows of each signature
+     * @param bands
+     * @return size of the file of a segment of that many documents, in bytes
+     */
+    public static long size(int numberOfDocuments, int length, int bands) {
+        return HEADER_SIZE + (long) numberOfDocuments * length * 4 + (long) bands * numberOfDocuments * 12;
+    }
+
+    /**
+     * forEachDocument
+     *
+     * @param band
+     * @param key hash of the band
+     * @param consumer receives the documents of the segment in that bucket
+     */
+    public void forEachDocument(int band, long key, IntConsumer consumer) {
+        int keysOffset = bandOffset(band);
+        int docsOffset = keysOffset + this.numberOfDocuments * 8;
+
+        // first key not smaller than the searched one
+        int low = 0, high = this.numberOfDocuments;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.buffer.getLong(keysOffset + middle * 8) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < this.numberOfDocuments && this.buffer.getLong(keysOffset + i * 8) == key; i++) {
+            consumer.accept(this.buffer.getInt(docsOffset + i * 4));
+        }
+    }
+
+    /**
+     * agreements
+     *
+     * @param signature
+     * @param doc a document of the segment
+     * @return number of rows where the signature and the one of the document agree
+     */
+    public int agreements(int[] signature, int doc) {
+        int offset = HEADER_SIZE + (doc - this.firstDoc) * this.length * 4;
+        int agreements = 0;
+        for (int row = 0; row < this.length; row++) {
+            if (signature[row] == this.buffer.getInt(offset + row * 4)) {
+                agreements++;
+            }
+        }
+        return agreements;
+    }
+
+    /**
+     * getSignature
+     *
+     * @param doc a document of the segment
+     * @return copy of its signature
+     */
+    public int[] getSignature(int doc) {
+        int offset = HEADER_SIZE + (doc - this.firstDoc) * this.length * 4;
+        int[] signature = new int[this.length];
+        for (int row = 0; row < this.length; row++) {
+            signature[row] = this.buffer.getInt(offset + row * 4);
+        }
+        return signature;
+    }
+
+    /**
+     * getSignatures
+     *
+     * @param values receives the signatures of all the documents of the segment, one after the other
+     * @param offset position of the first row of the first document in values
+     */
+    public void getSignatures(int[] values, int offset) {
+        ByteBuffer signatures = this.buffer.duplicate();
+        signatures.position(HEADER_SIZE);
+        signatures.asIntBuffer().get(values, offset, this.numberOfDocuments * this.length);
+    }
+
+    public int getFirstDoc() {
+        return this.firstDoc;
+    }
+
+    public int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public int getBands() {
+        return this.bands;
+    }
+
+    public int getRows() {
+        return this.rows;
+    }
+
+    public SignatureScheme getScheme() {
+        return this.scheme;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public int getK() {
+        return this.k;
+    }
+
+    public ShinglingMode getMode() {
+        return this.mode;
+    }
+
+    // position of the keys of the band in the file
+    private int bandOffset(int band) {
+        return HEADER_SIZE + this.numberOfDocuments * this.length * 4 + band * this.numberOfDocuments * 12;
+    }
+
+    // content of a segment file
+    private interface Content {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    // write a file next to the destination, then rename it (the rename is atomic)
+    private static void writeFile(File file, Content content) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            content.write(output);
+            output.flush();
+            stream.getChannel().force(true);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeHeader(DataOutputStream output, int firstDoc, int numberOfDocuments, int length,
+                                    int bands, int rows, SignatureScheme scheme, long seed, int k, ShinglingMode mode)
+            throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(firstDoc);
+        output.writeInt(numberOfDocuments);
+        output.writeInt(length);
+        output.writeInt(bands);
+        output.writeInt(rows);
+        output.writeInt(scheme.ordinal());
+        output.writeLong(seed);
+        output.writeInt(k);
+        output.writeInt(mode.ordinal());
+    }
+
+    // the keys of a band in increasing order, then the document of each key
+    private static void writeBand(DataOutputStream output, long[] keys, int[] docs) throws IOException {
+        sort(keys, docs, 0, keys.length - 1);
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+        for (long key : keys) {
+            if (!chunk.hasRemaining()) {
+                output.write(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+            chunk.putLong(key);
+        }
+        output.write(chunk.array(), 0, chunk.position());
+        writeInts(output, docs, docs.length);
+    }
+
+    // the first count values, converted to bytes a chunk at a time
+    private static void writeInts(DataOutputStream output, int[] values, int count) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < count; i++) {
+            if (!chunk.hasRemaining()) {
+                output.write(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+            chunk.putInt(values[i]);
+        }
+        output.write(chunk.array(), 0, chunk.position());
+    }
+
+    // sort the keys in increasing order, moving the documents with them (quicksort)
+    private static void sort(long[] keys, int[] docs, int low, int high) {
+        while (low < high) {
+            long pivot = keys[(low + high) >>> 1];
+            int i = low, j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long key = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = key;
+                    int doc = docs[i];
+                    docs[i] = docs[j];
+                    docs[j] = doc;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse on the smaller part, loop on the larger one
+            if (j - low < high - i) {
+                sort(keys, docs, low, j);
+                low = i;
+            } else {
+                sort(keys, docs, i, high);
+                high = j;
+            }
+        }
+    }
+}
@@ -2,51 +2,12 @@ package com.company;
 
 import java.io.*;
 import java.lang.reflect.Array;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 public class Main {
 
-    // read files and compute the shingles for that file
-    public static void computeShingle(Shingling shingling, File file) {
-
-        console("FILE NAME:", file);
-
-        String document = "";
-        String line = "";
-        BufferedReader br = null;
-
-        try {
-            br = new BufferedReader(new FileReader(file));
-
-            while((line = br.readLine()) != null) {
-                // beautify the string
-                document += line
-                        .replaceAll("\\s{2,}", " ")
-                        //.replaceAll("\\s", "")
-                        .replace("’", "")
-                        .toLowerCase();
-
-            }
-
-            // create the k-shingle for the document, the shingles are created by word
-            shingling.shingleADocument(document);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // close the buffer
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-    }
-
     // test the jaccard similarity
     private static void testJaccardSimilarity(Shingling shingling, int set1, int set2) {
         // Jaccard similarity of two sets
@@ -64,35 +25,98 @@ public class Main {
         console("RATIO: ", signatureComparison);
     }
 
+    // test the containment estimated from the sketches
+    private static void testContainment(Shingling shingling, int set1, int set2) {
+
+        System.out.println("== CONTAINMENT (KMV SKETCHES): ==");
+        shingling.kmvSketching(256, true);
+        console("SIZE ESTIMATES: ", String.format("%.0f / %.0f",
+                shingling.getSketch(set1).cardinality(), shingling.getSketch(set2).cardinality()));
+        console("CONTAINMENT OF " + set2 + " IN " + set1 + ": ", String.format("%.3f", shingling.estimateContainment(set2, set1)));
+    }
+
     // find candidates with LSH
-    private static ArrayList<String> findCandidates(Shingling shingling) {
+    private static LongHashSet findCandidates(Shingling shingling, PipelineMetrics metrics) {
         System.out.println("== LSH: ==");
 
         LSH lsh = new LSH(shingling.getSignatureMatrix());
-        ArrayList<String> candidateTuples = lsh.findCandidates(0.50);
-        console("LSH CANDIDATES: ", candidateTuples);
 
-        return candidateTuples;
-    }
+        // bands and rows chosen for the threshold, with the expected quality of the result
+        LshParameters parameters = lsh.plan(0.50);
+        console("LSH PARAMETERS: ", parameters);
+        console("EXPECTED RECALL: ", String.format("%.3f", parameters.expectedRecall(0.50)));
+        console("EXPECTED CANDIDATES (UNRELATED DOCS AT 0.10): ",
+                String.format("%.1f", parameters.expectedCandidatePairs(shingling.getNumberOfDocuments(), 0.10)));
+
+        PipelineMetrics.Stage stage = metrics.start("lsh");
+        LongHashSet candidatePairs = lsh.findCandidates(parameters);
+        stage.stop(shingling.getNumberOfDocuments(), 0);
+        metrics.set("bands", parameters.getBands());
+        metrics.set("rows", parameters.getRows());
+        metrics.set("candidatePairs", candidatePairs.size());
+        metrics.setBucketSizeHistograms(lsh.getBucketSizeHistograms());
+
+        StringBuilder pairs = new StringBuilder();
+        for (long pair : candidatePairs.toSortedArray()) {
+            pairs.append(pairs.length() == 0 ? "" : ", ").append(DocumentPairs.toString(pair));
+        }
+        console("LSH CANDIDATES: ", "[" + pairs + "]");
 
-    // checks the candidates result of the LSH
-    private static void checkCandidates(Shingling shingling, ArrayList<String> candidateTuple, double threshold) {
+        return candidatePairs;
+    }
 
-        for(String tuple: candidateTuple) {
-            int[] candidates = Arrays
-                                .asList(tuple.split("-"))
-                                .stream()
-                                .mapToInt(Integer::parseInt)
-                                .toArray();
+    // checks the candidates result of the LSH: the pairs are verified in parallel and printed in order,
+    // the similar ones are grouped in clusters
+    private static DocumentClusters checkCandidates(Shingling shingling, LongHashSet candidatePairs, double threshold,
+                                                    PipelineMetrics metrics) {
+        System.out.println("\n== CANDIDATES VERIFICATION (THRESHOLD " + threshold + "): ==");
+
+        // verified pairs sorted by document ids, filled by several threads
+        Map<Long, Float> similarPairs = new ConcurrentSkipListMap<>();
+        DocumentClusters clusters = new DocumentClusters(shingling.getNumberOfDocuments());
+        PipelineMetrics.Stage stage = metrics.start("verification");
+        int confirmed = shingling.candidateVerifier(threshold).verify(candidatePairs, true, (doc1, doc2, similarity) -> {
+            similarPairs.put(DocumentPairs.encode(doc1, doc2), similarity);
+            clusters.union(doc1, doc2);
+        });
+        stage.stop(candidatePairs.size(), 0);
+        metrics.set("verifiedPairs", confirmed);
+        metrics.set("falsePositiveRate", candidatePairs.size() == 0 ? 0.0 : 1 - (double) confirmed / candidatePairs.size());
+        metrics.set("clusters", clusters.getNumberOfClusters());
+
+        for (Map.Entry<Long, Float> pair : similarPairs.entrySet()) {
+            console(DocumentPairs.toString(pair.getKey()) + "\tRATIO:", pair.getValue());
+        }
+        console("SIMILAR PAIRS: ", confirmed + " of " + candidatePairs.size() + " candidates");
+        return clusters;
+    }
 
-            System.out.println("\n== JACCARD SIMILARITY OF DOC "+candidates[0]+" AND "+candidates[1]+":");
+    // prints the groups of near duplicate documents
+    private static void printClusters(DocumentClusters clusters) {
+        System.out.println("\n== NEAR DUPLICATE CLUSTERS: ==");
+        for (int[] cluster : clusters.getClusters(2)) {
+            console("CLUSTER " + cluster[0] + ":", Arrays.toString(cluster));
+        }
+        console("NUMBER OF CLUSTERS: ", clusters.getNumberOfClusters());
+    }
 
-            // Jaccard similarity
-            Float setsComparation = shingling.jaccardSimilarity(candidates[0], candidates[1]);
-            System.out.println("RATIO:\t\t" + setsComparation);
-            System.out.println("THRESHOLD:\t" + threshold);
-            System.out.println("SIMILAR?\t" + (setsComparation > threshold));
+    // compare the candidates of the LSH with the exact pairs above the threshold
+    private static void measureRecall(Shingling shingling, LongHashSet candidatePairs, double threshold,
+                                      PipelineMetrics metrics) {
+        System.out.println("\n== EXACT SIMILARITY JOIN: ==");
+
+        PipelineMetrics.Stage stage = metrics.start("exactJoin");
+        LongHashSet exactPairs = shingling.similarityJoin(threshold).join(true);
+        stage.stop(shingling.getNumberOfDocuments(), 0);
+        double recall = SimilarityJoin.recall(exactPairs, candidatePairs);
+        metrics.set("exactPairs", exactPairs.size());
+        metrics.set("lshRecall", recall);
+        StringBuilder pairs = new StringBuilder();
+        for (long pair : exactPairs.toSortedArray()) {
+            pairs.append(pairs.length() == 0 ? "" : ", ").append(DocumentPairs.toString(pair));
         }
+        console("EXACT PAIRS: ", "[" + pairs + "]");
+        console("LSH RECALL: ", String.format("%.3f", recall));
     }
 
     // utily method that prints information at console
@@ -111,35 +135,77 @@ public class Main {
     public static void main(String[] args) {
 
         int k= 9;
-        boolean byWord = false;
+        ShinglingMode mode = ShinglingMode.CHARACTER;
+        long seed = Shingling.DEFAULT_SEED;
+        SignatureScheme scheme = SignatureScheme.K_HASH;
+        boolean exactJoin = false;
 
         if (args.length < 2) {
-            System.err.println("Usage: <k> <by-word>");
+            System.err.println("Usage: <k> <by-word> [seed] [scheme] [exact-join]");
             System.err.println("k: int from 1 to 15");
-            System.err.println("by-word: true/false");
+            System.err.println("by-word: true/false or a shingling mode (character, word, rolling-character, hashed-word)");
+            System.err.println("seed: seed of the hash functions (default " + Shingling.DEFAULT_SEED + ")");
+            System.err.println("scheme: k-hash (default) or one-permutation");
+            System.err.println("exact-join: true to also find the exact similar pairs and the recall of the LSH (default false)");
             System.exit(-1);
         } else {
             k = Integer.parseInt(args[0]);
-            byWord = Boolean.valueOf(args[1]);
-
+            mode = ShinglingMode.fromArgument(args[1]);
+            if (args.length > 2) {
+                seed = Long.parseLong(args[2]);
+            }
+            if (args.length > 3) {
+                scheme = SignatureScheme.fromArgument(args[3]);
+            }
+            if (args.length > 4) {
+                exactJoin = Boolean.parseBoolean(args[4]);
+            }
         }
-        // create the shingling object: the shingles will be created by word
-        Shingling shingling = new Shingling(k, byWord);
+        // create the shingling object: the shingles will be created according to the mode
+        Shingling shingling = new Shingling(k, mode, seed);
+
+        // timings and counts of the stages, printed as JSON at the end
+        PipelineMetrics metrics = new PipelineMetrics();
 
         // read the test files
         File folder = new File("input");
         File[] listOfFiles = folder.listFiles();
+        if (listOfFiles == null) {
+            System.err.println("Cannot list the input folder: " + folder.getAbsolutePath());
+            System.exit(-1);
+        }
+        // sorted by name, so a document has the same id in every run (and in the shards of ShardMain)
+        Arrays.sort(listOfFiles);
 
         System.out.println("READ FILES AND COMPUTE SHINGLES\n");
-        // compute the shingles for each file
+        // compute the shingles of the files in parallel (the documents keep the order of the files)
         for (File file: listOfFiles) {
-            computeShingle(shingling, file);
+            console("FILE NAME:", file);
         }
+        long bytes = 0;
+        for (File file: listOfFiles) {
+            bytes += file.length();
+        }
+        PipelineMetrics.Stage ingestion = metrics.start("ingestion");
+        // a file that cannot be read is skipped (its doc is 0), the next files take its id
+        int[] docs = new int[listOfFiles.length];
+        try (IngestionPipeline pipeline = new IngestionPipeline(shingling)) {
+            docs = pipeline.ingest(Arrays.asList(listOfFiles));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        // the items of the ingestion are the shingles of the documents, so the rate is the shingles per second
+        long documentShingles = 0;
+        for (int doc = 1; doc <= shingling.getNumberOfDocuments(); doc++) {
+            documentShingles += shingling.getDocumentShingles(doc).length;
+        }
+        ingestion.stop(documentShingles, bytes);
+        metrics.set("documents", shingling.getNumberOfDocuments());
+        metrics.set("skippedFiles", listOfFiles.length - shingling.getNumberOfDocuments());
+        metrics.set("distinctShingles", shingling.getNumberOfDistinctShingles());
 
         System.out.println("\nGET SHINGLES INFO\n");
-        // get the map of shingles and documents
-        Map<Integer, ArrayList<Integer>> shingles = shingling.getShingles();
-        //console("SHINGLES:", shingles);
         console("SHINGLES INFO:", "\n"+shingling.getInfo());
 
         // Test the jaccardSimilarity and signatures by comparing two texts characterised by plagiarism:
@@ -152,20 +218,27 @@ public class Main {
         System.out.println("File list:");
         for (int i = 0; i <listOfFiles.length; i++) {
 
-            System.out.println("[File "+(i+1)+"] - "+listOfFiles[i]);
+            if (docs[i] == 0) {
+                System.out.println("[Skipped] - "+listOfFiles[i]);
+                continue;
+            }
+            System.out.println("[File "+docs[i]+"] - "+listOfFiles[i]);
 
             if (listOfFiles[i].getName().equals("page-rank.txt")) {
-                set1 = i + 1;
+                set1 = docs[i];
             }
             if (listOfFiles[i].getName().equals("page-rank-plagiarism.txt")){
-                set2 = i + 1;
+                set2 = docs[i];
             }
         }
 
         testJaccardSimilarity(shingling, set1, set2);
         // min hash: create the signatures for all the documents
-        Integer[][] signature = shingling.minHashing(100);
+        PipelineMetrics.Stage signatures = metrics.start("signatures");
+        SignatureMatrix signature = shingling.minHashing(100, scheme, true);
+        signatures.stop(shingling.getNumberOfDocuments(), 0);
         testSignatures(shingling, set1, set2);
+        testContainment(shingling, set1, set2);
 
 
         // ***** BONUS PART: Locality Sensitive Hashing ********
@@ -173,9 +246,19 @@ public class Main {
         System.out.println("\nPART 2: LOCALITY SENSITIVE HASHING\n");
 
         // Find the possible similar sets
-        ArrayList<String> candidateTuples = findCandidates(shingling);
+        LongHashSet candidatePairs = findCandidates(shingling, metrics);
 
         // check whether they are actually similar
-        checkCandidates(shingling, candidateTuples, 0.50);
+        DocumentClusters clusters = checkCandidates(shingling, candidatePairs, 0.50, metrics);
+        printClusters(clusters);
+
+        // how many of the similar pairs the LSH found: the exact join costs more than the LSH, so only on demand
+        if (exactJoin) {
+            measureRecall(shingling, candidatePairs, 0.50, metrics);
+        }
+
+        System.out.println("\n== METRICS: ==");
+        System.out.println(metrics.toJson());
+        metrics.close();
     }
 }
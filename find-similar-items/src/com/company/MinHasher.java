@@ -0,0 +1,290 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MinHasher
+ *
+ * Computes the MinHash signature of each document from its own shingle set,
+ * with one hash function per row (K_HASH) or with one-permutation hashing (ONE_PERMUTATION).
+ * Documents are independent of each other, so the signatures can be computed in parallel
+ * (fork/join over ranges of documents): the result is the same as the sequential one for a given seed.
+ */
+public class MinHasher {
+
+    /**
+     * scheme: how the signature is computed
+     * length: number of rows of the signature
+     * seed: seed of the hash functions
+     */
+    private final SignatureScheme scheme;
+    private final int length;
+    private final long seed;
+
+    /**
+     * hashFunctions: the functions of the signature (one per row with K_HASH, a single one with ONE_PERMUTATION)
+     */
+    private final HashFamily hashFunctions;
+
+    /**
+     * MinHasher constructor
+     *
+     * @param length number of rows of the signature
+     * @param seed
+     * @param scheme
+     */
+    public MinHasher(int length, long seed, SignatureScheme scheme) {
+        this.length = length;
+        this.seed = seed;
+        this.scheme = scheme;
+        this.hashFunctions = new HashFamily(scheme == SignatureScheme.ONE_PERMUTATION ? 1 : length, seed);
+    }
+
+    /**
+     * signature
+     *
+     * Writes the signature of the shingle set in values, starting from offset
+     *
+     * @param shingleSet
+     * @param values
+     * @param offset
+     */
+    public void signature(long[] shingleSet, int[] values, int offset) {
+        if (this.scheme == SignatureScheme.ONE_PERMUTATION) {
+            onePermutationSignature(shingleSet, values, offset);
+            return;
+        }
+
+        int length = this.length;
+        int[] rowResults = new int[length];
+
+        for (int row = 0; row < length; row++) {
+            values[offset + row] = SignatureMatrix.EMPTY;
+        }
+        for (long shingle : shingleSet) {
+            this.hashFunctions.hashAll(shingle, rowResults);
+            for (int row = 0; row < length; row++) {
+                if (rowResults[row] < values[offset + row]) {
+                    values[offset + row] = rowResults[row];
+                }
+            }
+        }
+    }
+
+    /**
+     * minimize
+     *
+     * Shingle-major computation of the signatures: the shingle is hashed once and the signatures of all the documents
+     * having it are updated. The signatures of the matrix must start EMPTY, and completeSignatures must be called
+     * once every shingle is added: the result is the same as signature for each document.
+     *
+     * @param shingle
+     * @param matrix signatures being computed
+     * @param docs the documents having the shingle
+     * @param count number of documents in docs
+     * @param rowValues buffer of length() values
+     */
+    public void minimize(long shingle, SignatureMatrix matrix, int[] docs, int count, int[] rowValues) {
+        if (this.scheme == SignatureScheme.ONE_PERMUTATION) {
+            int hash = this.hashFunctions.hash(0, shingle);
+            int bin = (int) (((long) hash * this.length) >>> HashFamily.HASH_BITS);
+            int[] values = matrix.getValues();
+            for (int i = 0; i < count; i++) {
+                int position = matrix.offset(docs[i]) + bin;
+                if (hash < values[position]) {
+                    values[position] = hash;
+                }
+            }
+            return;
+        }
+
+        this.hashFunctions.hashAll(shingle, rowValues);
+        for (int i = 0; i < count; i++) {
+            matrix.minimize(docs[i], rowValues);
+        }
+    }
+
+    /**
+     * completeSignatures
+     *
+     * Ends the shingle-major computation (see minimize): with ONE_PERMUTATION the empty bins are densified,
+     * a bin being empty when it is still EMPTY
+     *
+     * @param matrix
+     */
+    public void completeSignatures(SignatureMatrix matrix) {
+        if (this.scheme != SignatureScheme.ONE_PERMUTATION) {
+            return;
+        }
+        int[] values = matrix.getValues();
+        boolean[] filled = new boolean[this.length];
+        for (int doc = 1; doc <= matrix.getNumberOfDocuments(); doc++) {
+            int offset = matrix.offset(doc);
+            int filledBins = 0;
+            for (int row = 0; row < this.length; row++) {
+                filled[row] = values[offset + row] != SignatureMatrix.EMPTY;
+                if (filled[row]) {
+                    filledBins++;
+                }
+            }
+            if (filledBins > 0 && filledBins < this.length) {
+                densify(values, offset, filled);
+            }
+        }
+    }
+
+    /**
+     * secondMinimums
+     *
+     * For each row, the second smallest hash of the shingle set: the value the row would take
+     * if the shingle giving its minimum were missing (SignatureMatrix.EMPTY if the row has a single shingle).
+     * Multi-probe queries replace a minimum by its second one to visit the neighbouring buckets.
+     *
+     * @param shingleSet
+     * @param signature signature of the shingle set (see signature)
+     * @return second minimum of each row
+     */
+    public int[] secondMinimums(long[] shingleSet, int[] signature) {
+        int[] secondMinimums = new int[this.length];
+        Arrays.fill(secondMinimums, SignatureMatrix.EMPTY);
+
+        if (this.scheme == SignatureScheme.ONE_PERMUTATION) {
+            boolean[] filled = new boolean[this.length];
+            int filledBins = 0;
+            for (long shingle : shingleSet) {
+                int hash = this.hashFunctions.hash(0, shingle);
+                int bin = (int) (((long) hash * this.length) >>> HashFamily.HASH_BITS);
+                if (!filled[bin]) {
+                    filled[bin] = true;
+                    filledBins++;
+                }
+                if (hash > signature[bin] && hash < secondMinimums[bin]) {
+                    secondMinimums[bin] = hash;
+                }
+            }
+            // the empty bins copy the same bins as the signature
+            if (filledBins > 0 && filledBins < this.length) {
+                densify(secondMinimums, 0, filled);
+            }
+            return secondMinimums;
+        }
+
+        int[] rowResults = new int[this.length];
+        for (long shingle : shingleSet) {
+            this.hashFunctions.hashAll(shingle, rowResults);
+            for (int row = 0; row < this.length; row++) {
+                if (rowResults[row] > signature[row] && rowResults[row] < secondMinimums[row]) {
+                    secondMinimums[row] = rowResults[row];
+                }
+            }
+        }
+        return secondMinimums;
+    }
+
+    /**
+     * onePermutationSignature
+     *
+     * Each shingle is hashed once: the bin of the hash (its most significant bits) selects the row
+     * and the row keeps the minimum hash of its bin. This costs one hash per shingle instead of one per row.
+     *
+     * @param shingleSet
+     * @param values
+     * @param offset
+     */
+    private void onePermutationSignature(long[] shingleSet, int[] values, int offset) {
+        for (int row = 0; row < this.length; row++) {
+            values[offset + row] = SignatureMatrix.EMPTY;
+        }
+
+        boolean[] filled = new boolean[this.length];
+        int filledBins = 0;
+        for (long shingle : shingleSet) {
+            int hash = this.hashFunctions.hash(0, shingle);
+            int bin = (int) (((long) hash * this.length) >>> HashFamily.HASH_BITS);
+            if (!filled[bin]) {
+                filled[bin] = true;
+                filledBins++;
+                values[offset + bin] = hash;
+            } else if (hash < values[offset + bin]) {
+                values[offset + bin] = hash;
+            }
+        }
+        if (filledBins > 0 && filledBins < this.length) {
+            densify(values, offset, filled);
+        }
+    }
+
+    /**
+     * densify
+     *
+     * Optimal densification: an empty bin takes the value of the first filled bin in its own sequence of
+     * random probes. The probes only depend on the seed and on the bin, so two documents with the same bins filled
+     * copy the same values (the estimate of the Jaccard similarity stays unbiased).
+     *
+     * @param values
+     * @param offset
+     * @param filled bins that received at least one shingle
+     */
+    private void densify(int[] values, int offset, boolean[] filled) {
+        for (int row = 0; row < this.length; row++) {
+            if (filled[row]) {
+                continue;
+            }
+            int source;
+            long attempt = 0;
+            do {
+                attempt++;
+                long probe = HashFamily.splitMix64(this.seed ^ HashFamily.splitMix64(((long) row << 32) | attempt));
+                source = (int) ((probe >>> 1) % this.length);
+            } while (!filled[source]);
+            values[offset + row] = values[offset + source];
+        }
+    }
+
+    /**
+     * length
+     *
+     * @return number of rows of the signatures
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * signatures
+     *
+     * @param documents shingle set of each document (the first element is document 1)
+     * @param parallel true to split the documents among the threads of the common fork/join pool
+     * @return matrix of signatures
+     */
+    public SignatureMatrix signatures(List<long[]> documents, boolean parallel) {
+        SignatureMatrix matrix = new SignatureMatrix(documents.size(), this.length);
+
+        // each document writes only its own slice of the matrix
+        DocumentTasks.forEachDocument(documents.size(), parallel,
+                doc -> signature(documents.get(doc - 1), matrix.getValues(), matrix.offset(doc)));
+        return matrix;
+    }
+
+    /**
+     * bBitSignatures
+     *
+     * Computes the signatures keeping only the lowest b bits of each row, without building the full matrix
+     *
+     * @param documents shingle set of each document (the first element is document 1)
+     * @param b bits kept per row
+     * @param parallel true to split the documents among the threads of the common fork/join pool
+     * @return packed b-bit signatures
+     */
+    public BBitSignatureMatrix bBitSignatures(List<long[]> documents, int b, boolean parallel) {
+        BBitSignatureMatrix matrix = new BBitSignatureMatrix(documents.size(), this.length, b);
+
+        DocumentTasks.forEachDocument(documents.size(), parallel, doc -> {
+            int[] signature = new int[this.length];
+            signature(documents.get(doc - 1), signature, 0);
+            matrix.set(doc, signature, 0);
+        });
+        return matrix;
+    }
+}
@@ -0,0 +1,406 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * OnlineLshIndex
+ *
+ * Incremental LSH index: documents are added one at a time (shingles -> signature -> band buckets)
+ * and the index answers "which indexed documents are at least s similar to this one" without a batch run.
+ *
+ * The similarity of the candidates found in the buckets is estimated from the signatures,
+ * so a query only costs the shingling of the text, its signature and a lookup per band.
+ * Shingling and hashing are done outside the lock: queries run concurrently, additions are serialized.
+ *
+ * Multi-probe queries also visit the buckets next to the ones of the query: some rows of a band are replaced
+ * by their second minimum, the sets of rows whose two minimums are closest first (query-directed probing,
+ * Lv et al., Multi-probe LSH, 2007). A row is scored by the gap between its two minimums, and the sets of rows
+ * to replace are generated in order of their total gap by shifting or expanding the last row of the best set,
+ * over all the bands at once. A similar document that missed the exact buckets because of a few rows is still
+ * found, so fewer bands (and less memory) reach the recall of more bands without probing.
+ */
+public class OnlineLshIndex {
+
+    /**
+     * Match
+     *
+     * An indexed document similar to the query
+     */
+    public static class Match {
+
+        private final int doc;
+        private final float similarity;
+
+        public Match(int doc, float similarity) {
+            this.doc = doc;
+            this.similarity = similarity;
+        }
+
+        /**
+         * @return id of the indexed document (the first document added is 1)
+         */
+        public int getDoc() {
+            return this.doc;
+        }
+
+        /**
+         * @return similarity estimated from the signatures
+         */
+        public float getSimilarity() {
+            return this.similarity;
+        }
+
+        @Override
+        public String toString() {
+            return this.doc + " (" + this.similarity + ")";
+        }
+    }
+
+    /**
+     * shingling: computes the shingle sets of the texts (the documents are not added to it)
+     * minHasher: computes the signatures
+     * parameters: bands and rows of the index
+     */
+    private final Shingling shingling;
+    private final MinHasher minHasher;
+    private final LshParameters parameters;
+
+    /**
+     * bands: the buckets of each band
+     * signatures: signature of each indexed document, one after the other
+     * length: number of rows of the signatures
+     * numberOfDocuments: number of indexed documents
+     */
+    private final BandTable[] bands;
+    private int[] signatures;
+    private final int length;
+    private int numberOfDocuments;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * OnlineLshIndex constructor
+     *
+     * @param shingling how the texts are shingled (only its shingleSet method is used)
+     * @param signatureLength number of rows of the signatures
+     * @param scheme how the signatures are computed
+     * @param threshold similarity the bands and rows are planned for
+     * @param seed seed of the hash functions
+     */
+    public OnlineLshIndex(Shingling shingling, int signatureLength, SignatureScheme scheme, double threshold, long seed) {
+        this(shingling, new MinHasher(signatureLength, seed, scheme), LshParameters.optimal(signatureLength, threshold));
+    }
+
+    /**
+     * OnlineLshIndex constructor
+     *
+     * @param shingling how the texts are shingled (only its shingleSet method is used)
+     * @param minHasher how the signatures are computed
+     * @param parameters bands and rows
+     */
+    public OnlineLshIndex(Shingling shingling, MinHasher minHasher, LshParameters parameters) {
+        if (parameters.getBands() * parameters.getRows() > minHasher.length()) {
+            throw new IllegalArgumentException("Not enough rows in the signatures for " + parameters);
+        }
+        this.shingling = shingling;
+        this.minHasher = minHasher;
+        this.parameters = parameters;
+        this.length = minHasher.length();
+        this.signatures = new int[1024 * this.length];
+        this.bands = new BandTable[parameters.getBands()];
+        for (int band = 0; band < this.bands.length; band++) {
+            this.bands[band] = new BandTable(1024);
+        }
+    }
+
+    /**
+     * add
+     *
+     * @param text
+     * @return id of the new document
+     */
+    public int add(String text) {
+        return add(signature(text));
+    }
+
+    /**
+     * add
+     *
+     * @param signature signature of the document (see signature(String))
+     * @return id of the new document
+     */
+    public int add(int[] signature) {
+        this.lock.writeLock().lock();
+        try {
+            return insert(signature);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * query
+     *
+     * @param text
+     * @param similarity minimum similarity of the results
+     * @return indexed documents at least that similar to the text, the most similar first
+     */
+    public List<Match> query(String text, double similarity) {
+        return query(signature(text), similarity);
+    }
+
+    /**
+     * query
+     *
+     * @param signature signature of the query (see signature(String))
+     * @param similarity minimum similarity of the results
+     * @return indexed documents at least that similar to the signature, the most similar first
+     */
+    public List<Match> query(int[] signature, double similarity) {
+        this.lock.readLock().lock();
+        try {
+            return search(signature, null, similarity, 0);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * query
+     *
+     * Multi-probe query: besides the bucket of each band, up to probes neighbouring buckets are visited
+     *
+     * @param text
+     * @param similarity minimum similarity of the results
+     * @param probes number of extra buckets visited
+     * @return indexed documents at least that similar to the text, the most similar first
+     */
+    public List<Match> query(String text, double similarity, int probes) {
+        long[] shingleSet = this.shingling.shingleSet(text);
+        int[] signature = new int[this.length];
+        this.minHasher.signature(shingleSet, signature, 0);
+        return query(signature, this.minHasher.secondMinimums(shingleSet, signature), similarity, probes);
+    }
+
+    /**
+     * query
+     *
+     * Multi-probe query: besides the bucket of each band, up to probes neighbouring buckets are visited
+     *
+     * @param signature signature of the query
+     * @param secondMinimums second minimum of each row of the query (see MinHasher.secondMinimums)
+     * @param similarity minimum similarity of the results
+     * @param probes number of extra buckets visited
+     * @return indexed documents at least that similar to the signature, the most similar first
+     */
+    public List<Match> query(int[] signature, int[] secondMinimums, double similarity, int probes) {
+        this.lock.readLock().lock();
+        try {
+            return search(signature, secondMinimums, similarity, probes);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * queryAndAdd
+     *
+     * Finds the documents similar to the text and then adds it to the index, as a single operation
+     * (e.g. to deduplicate pages while they are crawled)
+     *
+     * @param text
+     * @param similarity minimum similarity of the results
+     * @return indexed documents (before this one) at least that similar to the text, the most similar first
+     */
+    public List<Match> queryAndAdd(String text, double similarity) {
+        int[] signature = signature(text);
+        this.lock.writeLock().lock();
+        try {
+            List<Match> matches = search(signature, null, similarity, 0);
+            insert(signature);
+            return matches;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * signature
+     *
+     * @param text
+     * @return MinHash signature of the text
+     */
+    public int[] signature(String text) {
+        int[] signature = new int[this.length];
+        this.minHasher.signature(this.shingling.shingleSet(text), signature, 0);
+        return signature;
+    }
+
+    /**
+     * getSignature
+     *
+     * @param doc
+     * @return copy of the signature of an indexed document
+     * @throws IllegalArgumentException if the document is not in the index
+     */
+    public int[] getSignature(int doc) {
+        this.lock.readLock().lock();
+        try {
+            if (doc < 1 || doc > this.numberOfDocuments) {
+                throw new IllegalArgumentException("No document " + doc + " in the index");
+            }
+            int offset = (doc - 1) * this.length;
+            return Arrays.copyOfRange(this.signatures, offset, offset + this.length);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * getNumberOfDocuments
+     *
+     * @return number of indexed documents
+     */
+    public int getNumberOfDocuments() {
+        this.lock.readLock().lock();
+        try {
+            return this.numberOfDocuments;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * getParameters
+     *
+     * @return bands and rows of the index
+     */
+    public LshParameters getParameters() {
+        return this.parameters;
+    }
+
+    // add the signature to the band tables (the write lock is held)
+    private int insert(int[] signature) {
+        int doc = ++this.numberOfDocuments;
+        int offset = (doc - 1) * this.length;
+        if (offset + this.length > this.signatures.length) {
+            this.signatures = Arrays.copyOf(this.signatures, this.signatures.length * 2);
+        }
+        System.arraycopy(signature, 0, this.signatures, offset, this.length);
+
+        int rows = this.parameters.getRows();
+        for (int band = 0; band < this.bands.length; band++) {
+            this.bands[band].add(BandHasher.hash(signature, band * rows, rows, band), doc);
+        }
+        return doc;
+    }
+
+    // look up the buckets of the signature, and the probes next to them, and keep the candidates similar enough
+    // (a lock is held)
+    private List<Match> search(int[] signature, int[] secondMinimums, double similarity, int probes) {
+        // the distinct candidates, compared with the query in bulk once all the buckets are visited
+        LongHashSet candidates = new LongHashSet();
+        int rows = this.parameters.getRows();
+        IntConsumer candidate = candidates::add;
+
+        for (int band = 0; band < this.bands.length; band++) {
+            this.bands[band].forEachDocument(BandHasher.hash(signature, band * rows, rows, band), candidate);
+        }
+
+        if (probes > 0) {
+            probe(signature, secondMinimums, probes, candidate);
+        }
+        long[] sorted = candidates.toSortedArray();
+        int[] docs = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            docs[i] = (int) sorted[i];
+        }
+        return SignatureComparator.rank(signature, this.signatures, this.length, docs, docs.length, similarity);
+    }
+
+    // visit the buckets of the most likely perturbations of the bands of the signature (a lock is held)
+    private void probe(int[] signature, int[] secondMinimums, int probes, IntConsumer candidate) {
+        int rows = this.parameters.getRows();
+
+        // the rows of each band that can be perturbed, the smallest gaps first (at most 63 per band)
+        long[][] gaps = new long[this.bands.length][];
+        PriorityQueue<Perturbation> queue = new PriorityQueue<>();
+        for (int band = 0; band < this.bands.length; band++) {
+            long[] bandGaps = new long[rows];
+            int count = 0;
+            for (int row = 0; row < rows; row++) {
+                int position = band * rows + row;
+                if (secondMinimums[position] != SignatureMatrix.EMPTY) {
+                    long gap = (long) secondMinimums[position] - signature[position];
+                    bandGaps[count++] = (gap << 32) | row;
+                }
+            }
+            Arrays.sort(bandGaps, 0, count);
+            gaps[band] = Arrays.copyOf(bandGaps, Math.min(count, 63));
+            if (gaps[band].length > 0) {
+                queue.add(new Perturbation(band, 1L, 0, score(gaps[band][0])));
+            }
+        }
+
+        // perturbation sets in increasing score: the set of a band is shifted (its last row replaced by the next one)
+        // or expanded (the next row added), so every set of every band comes out once (Lv et al., section 4.3)
+        int[] probe = new int[rows];
+        for (int i = 0; i < probes && !queue.isEmpty(); i++) {
+            Perturbation perturbation = queue.poll();
+            long[] bandGaps = gaps[perturbation.band];
+            System.arraycopy(signature, perturbation.band * rows, probe, 0, rows);
+            for (int j = 0; j <= perturbation.last; j++) {
+                if ((perturbation.set & (1L << j)) != 0) {
+                    int row = (int) bandGaps[j];
+                    probe[row] = secondMinimums[perturbation.band * rows + row];
+                }
+            }
+            this.bands[perturbation.band].forEachDocument(BandHasher.hash(probe, 0, rows, perturbation.band), candidate);
+
+            int next = perturbation.last + 1;
+            if (next < bandGaps.length) {
+                long lastRow = 1L << perturbation.last;
+                queue.add(new Perturbation(perturbation.band, (perturbation.set & ~lastRow) | (1L << next), next,
+                        perturbation.score - score(bandGaps[perturbation.last]) + score(bandGaps[next])));
+                queue.add(new Perturbation(perturbation.band, perturbation.set | (1L << next), next,
+                        perturbation.score + score(bandGaps[next])));
+            }
+        }
+    }
+
+    // cost of perturbing a row: the gap between its two minimums, as a fraction of the hash range
+    private static double score(long gap) {
+        return (gap >>> 32) / (double) (1L << HashFamily.HASH_BITS);
+    }
+
+    /**
+     * Perturbation
+     *
+     * Rows of a band replaced by their second minimum: set has bit j for the j-th smallest gap of the band,
+     * last is the highest bit set
+     */
+    private static class Perturbation implements Comparable<Perturbation> {
+
+        final int band, last;
+        final long set;
+        final double score;
+
+        Perturbation(int band, long set, int last, double score) {
+            this.band = band;
+            this.set = set;
+            this.last = last;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Perturbation other) {
+            return Double.compare(this.score, other.score);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.company;
+
+/**
+ * PairConsumer
+ *
+ * Receives the pairs of similar documents found by a join or a verification, with their similarity.
+ * It can be called by several threads at the same time.
+ */
+public interface PairConsumer {
+
+    /**
+     * accept
+     *
+     * @param doc1 the smaller document id
+     * @param doc2 the larger document id
+     * @param similarity
+     */
+    void accept(int doc1, int doc2, float similarity);
+}
@@ -0,0 +1,395 @@
+package com.company;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PersistentLshIndex
+ *
+ * LSH index stored on disk as a folder of append-only segments (see LshSegment).
+ * Opening the index only maps the segment files, so a restarted process can answer queries immediately;
+ * new documents are written in a new segment, the existing ones are never modified.
+ * Every append adds a segment (and a binary search per band and segment to each query), so compact
+ * merges the segments from time to time, in segments of at most LshSegment.MAX_SIZE bytes.
+ *
+ * All the segments must share the signature length, scheme, seed, bands and rows, and the shingling (k and mode)
+ * of the documents.
+ */
+public class PersistentLshIndex {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".lsh";
+
+    /**
+     * folder: where the segments are stored
+     * segments: the mapped segments, in order of document id
+     * files: the file of each segment
+     * nextSegment: number of the next segment file written (the files are numbered in the order they are written)
+     */
+    private final File folder;
+    private final List<LshSegment> segments = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private int nextSegment;
+
+    /**
+     * k, mode: how the documents are shingled
+     * length, parameters, scheme, seed: how the signatures of the index are computed and banded
+     */
+    private final int k;
+    private final ShinglingMode mode;
+    private final int length;
+    private final LshParameters parameters;
+    private final SignatureScheme scheme;
+    private final long seed;
+
+    /**
+     * numberOfDocuments: number of documents in all the segments
+     */
+    private int numberOfDocuments;
+
+    /**
+     * PersistentLshIndex constructor
+     *
+     * Opens the index in the folder (creating the folder if needed) and maps the existing segments
+     *
+     * @param folder
+     * @param k size of the shingles of the documents
+     * @param mode shingling mode of the documents
+     * @param length number of rows of the signatures
+     * @param parameters bands and rows
+     * @param scheme how the signatures are computed
+     * @param seed seed of the hash functions of the signatures
+     * @throws IOException if a segment cannot be read or was written with different settings
+     */
+    public PersistentLshIndex(File folder, int k, ShinglingMode mode, int length, LshParameters parameters,
+                              SignatureScheme scheme, long seed) throws IOException {
+        if (parameters.getBands() * parameters.getRows() > length) {
+            throw new IllegalArgumentException("Not enough rows in the signatures for " + parameters);
+        }
+        this.folder = folder;
+        this.k = k;
+        this.mode = mode;
+        this.length = length;
+        this.parameters = parameters;
+        this.scheme = scheme;
+        this.seed = seed;
+
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create the index folder: " + folder);
+        }
+        List<File> superseded = new ArrayList<>();
+        for (File file : segmentFiles(folder)) {
+            LshSegment segment = new LshSegment(file);
+            if (segment.getK() != k || segment.getMode() != mode || segment.getLength() != length
+                    || segment.getBands() != parameters.getBands() || segment.getRows() != parameters.getRows()
+                    || segment.getScheme() != scheme || segment.getSeed() != seed) {
+                throw new IOException("Segment written with different settings: " + file);
+            }
+            // a segment written by compact replaces the older ones in its range, still there if compact was interrupted
+            for (int i = this.segments.size() - 1; i >= 0; i--) {
+                LshSegment older = this.segments.get(i);
+                if (older.getFirstDoc() >= segment.getFirstDoc() && lastDoc(older) <= lastDoc(segment)) {
+                    this.segments.remove(i);
+                    superseded.add(this.files.remove(i));
+                } else if (older.getFirstDoc() <= lastDoc(segment) && segment.getFirstDoc() <= lastDoc(older)) {
+                    throw new IOException("Segment overlapping a part of another one: " + file);
+                }
+            }
+            this.segments.add(segment);
+            this.files.add(file);
+            this.nextSegment = segmentNumber(file) + 1;
+        }
+
+        // the segments in order of document id (an empty segment before the one starting at the same document)
+        Integer[] order = new Integer[this.segments.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> this.segments.get(i).getFirstDoc() != this.segments.get(j).getFirstDoc()
+                ? Integer.compare(this.segments.get(i).getFirstDoc(), this.segments.get(j).getFirstDoc())
+                : Integer.compare(this.segments.get(i).getNumberOfDocuments(), this.segments.get(j).getNumberOfDocuments()));
+        List<LshSegment> segments = new ArrayList<>(this.segments);
+        List<File> files = new ArrayList<>(this.files);
+        this.segments.clear();
+        this.files.clear();
+        for (int i : order) {
+            if (segments.get(i).getFirstDoc() != this.numberOfDocuments + 1) {
+                throw new IOException("Missing documents before segment: " + files.get(i));
+            }
+            this.segments.add(segments.get(i));
+            this.files.add(files.get(i));
+            this.numberOfDocuments += segments.get(i).getNumberOfDocuments();
+        }
+        delete(superseded);
+    }
+
+    /**
+     * exists
+     *
+     * @param folder
+     * @return true if the folder has segments
+     * @throws IOException if the folder cannot be listed
+     */
+    public static boolean exists(File folder) throws IOException {
+        return folder.isDirectory() && !segmentFiles(folder).isEmpty();
+    }
+
+    /**
+     * open
+     *
+     * Opens an existing index with the settings of its segments
+     *
+     * @param folder
+     * @return the index
+     * @throws IOException if the folder has no segment or a segment cannot be read
+     */
+    public static PersistentLshIndex open(File folder) throws IOException {
+        if (!exists(folder)) {
+            throw new IOException("No LSH index in: " + folder);
+        }
+        LshSegment first = new LshSegment(segmentFiles(folder).get(0));
+        return new PersistentLshIndex(folder, first.getK(), first.getMode(), first.getLength(),
+                new LshParameters(first.getBands(), first.getRows()), first.getScheme(), first.getSeed());
+    }
+
+    /**
+     * open
+     *
+     * Opens an existing index, to add or query documents shingled with k and mode
+     *
+     * @param folder
+     * @param k size of the shingles of the documents
+     * @param mode shingling mode of the documents
+     * @return the index
+     * @throws IOException if the index was built from other shingles, or cannot be opened
+     */
+    public static PersistentLshIndex open(File folder, int k, ShinglingMode mode) throws IOException {
+        PersistentLshIndex index = open(folder);
+        if (index.k != k || index.mode != mode) {
+            throw new IOException("The index in " + folder + " has shingles of " + index.k + " " + index.mode
+                    + ", not " + k + " " + mode);
+        }
+        return index;
+    }
+
+    /**
+     * append
+     *
+     * Writes the signatures in a new segment: the documents take the ids following the ones already in the index
+     *
+     * @param signatures the signature of each new document
+     * @return id of the first new document
+     * @throws IOException
+     */
+    public synchronized int append(List<int[]> signatures) throws IOException {
+        int[] values = new int[signatures.size() * this.length];
+        for (int i = 0; i < signatures.size(); i++) {
+            if (signatures.get(i).length != this.length) {
+                throw new IllegalArgumentException("Signature of length " + signatures.get(i).length
+                        + " instead of " + this.length);
+            }
+            System.arraycopy(signatures.get(i), 0, values, i * this.length, this.length);
+        }
+        return append(values, signatures.size());
+    }
+
+    /**
+     * append
+     *
+     * Writes all the signatures of the matrix in a new segment
+     *
+     * @param matrix
+     * @return id of the first new document (document d of the matrix becomes first + d - 1)
+     * @throws IOException
+     */
+    public synchronized int append(SignatureMatrix matrix) throws IOException {
+        if (matrix.length() != this.length) {
+            throw new IllegalArgumentException("Signatures of length " + matrix.length() + " instead of " + this.length);
+        }
+        return append(matrix.getValues(), matrix.getNumberOfDocuments());
+    }
+
+    /**
+     * query
+     *
+     * @param signature
+     * @param similarity minimum similarity of the results
+     * @return indexed documents at least that similar to the signature (estimated from the signatures),
+     * the most similar first
+     */
+    public List<OnlineLshIndex.Match> query(int[] signature, double similarity) {
+        List<LshSegment> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(this.segments);
+        }
+
+        int rows = this.parameters.getRows();
+        int minAgreements = LshParameters.minAgreements(similarity, this.length);
+        LongHashSet seen = new LongHashSet();
+        List<OnlineLshIndex.Match> matches = new ArrayList<>();
+        for (int band = 0; band < this.parameters.getBands(); band++) {
+            long key = BandHasher.hash(signature, band * rows, rows, band);
+            for (LshSegment segment : segments) {
+                segment.forEachDocument(band, key, doc -> {
+                    if (seen.add(doc)) {
+                        int agreements = segment.agreements(signature, doc);
+                        if (agreements >= minAgreements) {
+                            matches.add(new OnlineLshIndex.Match(doc, agreements / (float) this.length));
+                        }
+                    }
+                });
+            }
+        }
+        matches.sort((match1, match2) -> Float.compare(match2.getSimilarity(), match1.getSimilarity()));
+        return matches;
+    }
+
+    /**
+     * compact
+     *
+     * Merges the segments in segments of at most LshSegment.MAX_SIZE bytes (see compact(long))
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        compact(LshSegment.MAX_SIZE);
+    }
+
+    /**
+     * compact
+     *
+     * Merges runs of consecutive segments in new segments of at most maxSize bytes, with the same document ids,
+     * and deletes the old ones. The segments are streamed from the mapped files (see LshSegment.merge).
+     * Each new segment is written before the ones it replaces are deleted: if the process stops in between,
+     * opening the index skips and deletes the segments it replaces. Queries running meanwhile keep
+     * reading the old segments.
+     *
+     * @param maxSize largest size of a merged segment, in bytes
+     * @throws IOException
+     */
+    public synchronized void compact(long maxSize) throws IOException {
+        int first = 0;
+        while (first < this.segments.size()) {
+            // the longest run of segments from first that fits in maxSize
+            int end = first;
+            int count = 0;
+            while (end < this.segments.size() && LshSegment.size(count + this.segments.get(end).getNumberOfDocuments(),
+                    this.length, this.parameters.getBands()) <= maxSize) {
+                count += this.segments.get(end).getNumberOfDocuments();
+                end++;
+            }
+            if (end - first < 2) {
+                first++;
+                continue;
+            }
+
+            File file = segmentFile(this.nextSegment);
+            LshSegment.merge(file, this.segments.subList(first, end));
+            this.nextSegment++;
+            List<File> replaced = new ArrayList<>(this.files.subList(first, end));
+            this.segments.subList(first, end).clear();
+            this.files.subList(first, end).clear();
+            this.segments.add(first, new LshSegment(file));
+            this.files.add(first, file);
+            delete(replaced);
+            first++;
+        }
+    }
+
+    /**
+     * getSignature
+     *
+     * @param doc
+     * @return copy of the signature of an indexed document
+     */
+    public synchronized int[] getSignature(int doc) {
+        for (LshSegment segment : this.segments) {
+            if (doc >= segment.getFirstDoc() && doc < segment.getFirstDoc() + segment.getNumberOfDocuments()) {
+                return segment.getSignature(doc);
+            }
+        }
+        throw new IllegalArgumentException("No document " + doc + " in the index");
+    }
+
+    /**
+     * getMinHasher
+     *
+     * @return a MinHasher computing signatures compatible with the index
+     */
+    public MinHasher getMinHasher() {
+        return new MinHasher(this.length, this.seed, this.scheme);
+    }
+
+    public synchronized int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    public synchronized int getNumberOfSegments() {
+        return this.segments.size();
+    }
+
+    public LshParameters getParameters() {
+        return this.parameters;
+    }
+
+    public int getK() {
+        return this.k;
+    }
+
+    public ShinglingMode getMode() {
+        return this.mode;
+    }
+
+    // write the documents in a new segment and map it (the lock is held)
+    private int append(int[] values, int count) throws IOException {
+        int firstDoc = this.numberOfDocuments + 1;
+        File file = segmentFile(this.nextSegment);
+        LshSegment.write(file, values, count, firstDoc, this.length, this.parameters, this.scheme, this.seed,
+                this.k, this.mode);
+
+        this.segments.add(new LshSegment(file));
+        this.files.add(file);
+        this.nextSegment++;
+        this.numberOfDocuments += count;
+        return firstDoc;
+    }
+
+    private static int lastDoc(LshSegment segment) {
+        return segment.getFirstDoc() + segment.getNumberOfDocuments() - 1;
+    }
+
+    private File segmentFile(int number) {
+        return new File(this.folder, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // the segment files of the folder, in the order they were written
+    private static List<File> segmentFiles(File folder) throws IOException {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("Cannot list the index folder: " + folder);
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    private static int segmentNumber(File file) throws IOException {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a segment file name: " + file, e);
+        }
+    }
+
+    // the mapped buffers of the segments are released by the garbage collector, the file may outlive the process
+    private static void delete(List<File> files) {
+        for (File file : files) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
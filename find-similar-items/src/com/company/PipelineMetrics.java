@@ -0,0 +1,307 @@
+package com.company;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PipelineMetrics
+ *
+ * Timings and counts of the stages of a run (ingestion, signatures, LSH, verification...), with the bucket sizes
+ * of each band of the LSH and the peak heap, readable from the code and dumped as JSON at the end of the run.
+ * The used heap only goes down when the garbage collector runs, so its peak is either the heap used just before a
+ * collection (given by the notifications of the collectors) or the heap used now: both are recorded, the peak is
+ * the true one and not only the heap used at the start or the end of a stage.
+ * A stage records its duration, the number of items it processed and the bytes it read, so the rates
+ * (items/s, bytes/s) can be compared between runs. The methods can be called by several threads.
+ * The metrics listen to the collectors until they are closed.
+ */
+public class PipelineMetrics implements AutoCloseable {
+
+    /**
+     * Stage
+     *
+     * A timed stage of the pipeline, started by PipelineMetrics.start
+     */
+    public static class Stage {
+
+        private final PipelineMetrics metrics;
+        private final String name;
+        private final long start;
+        private long nanos = -1, items, bytes;
+
+        private Stage(PipelineMetrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * stop
+         *
+         * @param items number of items processed by the stage (documents, shingles, pairs...)
+         * @param bytes number of bytes read by the stage
+         */
+        public void stop(long items, long bytes) {
+            long nanos = System.nanoTime() - this.start;
+            synchronized (this.metrics) {
+                this.nanos = nanos;
+                this.items = items;
+                this.bytes = bytes;
+                this.metrics.sampleHeap();
+            }
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * getSeconds
+         *
+         * @return duration of the stage, NaN if it has not been stopped
+         */
+        public double getSeconds() {
+            return this.nanos < 0 ? Double.NaN : this.nanos / 1e9;
+        }
+
+        public long getItems() {
+            return this.items;
+        }
+
+        public long getBytes() {
+            return this.bytes;
+        }
+
+        public double getItemsPerSecond() {
+            return this.nanos < 0 ? Double.NaN : this.nanos > 0 ? this.items / getSeconds() : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return this.nanos < 0 ? Double.NaN : this.nanos > 0 ? this.bytes / getSeconds() : 0;
+        }
+    }
+
+    /**
+     * stages: the stages started, in order
+     * values: counts and ratios of the run (documents, candidate pairs, false positive rate...)
+     * bucketSizeHistograms: number of LSH buckets of each band by size, in powers of two (see BandTable.addBucketSizes)
+     * peakHeap: largest heap used since the metrics were created, in bytes
+     * heapPools: names of the memory pools of the heap (the collectors also report the pools outside the heap)
+     * collectors: the collectors listened to, until close
+     */
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Number> values = new LinkedHashMap<>();
+    private long[][] bucketSizeHistograms = new long[0][];
+    private long peakHeap;
+    private final Set<String> heapPools = new HashSet<>();
+    private final List<NotificationEmitter> collectors = new ArrayList<>();
+    private final NotificationListener collections = this::collected;
+
+    public PipelineMetrics() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                this.heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(this.collections, null, null);
+                this.collectors.add(emitter);
+            }
+        }
+        sampleHeap();
+    }
+
+    /**
+     * start
+     *
+     * @param name of the stage (a stage started again replaces the previous one)
+     * @return the stage, to be stopped when it ends
+     */
+    public synchronized Stage start(String name) {
+        sampleHeap();
+        Stage stage = new Stage(this, name);
+        this.stages.put(name, stage);
+        return stage;
+    }
+
+    /**
+     * set
+     *
+     * @param name
+     * @param value a count or a ratio
+     */
+    public synchronized void set(String name, Number value) {
+        this.values.put(name, value);
+    }
+
+    /**
+     * setBucketSizeHistograms
+     *
+     * @param histograms number of buckets of each band by size (see LSH.getBucketSizeHistograms)
+     */
+    public synchronized void setBucketSizeHistograms(long[][] histograms) {
+        this.bucketSizeHistograms = new long[histograms.length][];
+        for (int band = 0; band < histograms.length; band++) {
+            this.bucketSizeHistograms[band] = histograms[band].clone();
+        }
+    }
+
+    public synchronized Stage getStage(String name) {
+        return this.stages.get(name);
+    }
+
+    public synchronized Number get(String name) {
+        return this.values.get(name);
+    }
+
+    public synchronized long[][] getBucketSizeHistograms() {
+        long[][] histograms = new long[this.bucketSizeHistograms.length][];
+        for (int band = 0; band < histograms.length; band++) {
+            histograms[band] = this.bucketSizeHistograms[band].clone();
+        }
+        return histograms;
+    }
+
+    /**
+     * getPeakHeap
+     *
+     * @return largest heap used since the metrics were created, in bytes (a collection is notified a little after
+     * it ends, so one that has just happened may not be counted yet)
+     */
+    public synchronized long getPeakHeap() {
+        sampleHeap();
+        return this.peakHeap;
+    }
+
+    // the pools of the heap peak at different times, so their peaks are not added: the total used heap is sampled
+    private synchronized void sampleHeap() {
+        this.peakHeap = Math.max(this.peakHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    // called by the thread of the notifications after each collection: the heap used before it is a local peak
+    private void collected(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+            if (this.heapPools.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        synchronized (this) {
+            this.peakHeap = Math.max(this.peakHeap, used);
+        }
+    }
+
+    /**
+     * close
+     *
+     * Stops listening to the collectors: the peak heap is then only sampled when it is read or a stage starts or stops
+     */
+    @Override
+    public synchronized void close() {
+        for (NotificationEmitter collector : this.collectors) {
+            try {
+                collector.removeNotificationListener(this.collections);
+            } catch (ListenerNotFoundException e) {
+                // already removed
+            }
+        }
+        this.collectors.clear();
+    }
+
+    /**
+     * toJson
+     *
+     * @return the metrics of the run as a JSON object
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"stages\": {");
+        String separator = "\n";
+        for (Stage stage : this.stages.values()) {
+            json.append(separator).append("    ").append(quote(stage.getName())).append(": {")
+                    .append("\"seconds\": ").append(number(stage.getSeconds()))
+                    .append(", \"items\": ").append(stage.getItems())
+                    .append(", \"itemsPerSecond\": ").append(number(stage.getItemsPerSecond()))
+                    .append(", \"bytes\": ").append(stage.getBytes())
+                    .append(", \"bytesPerSecond\": ").append(number(stage.getBytesPerSecond()))
+                    .append("}");
+            separator = ",\n";
+        }
+        json.append(this.stages.isEmpty() ? "},\n" : "\n  },\n");
+
+        json.append("  \"values\": {");
+        separator = "\n";
+        for (Map.Entry<String, Number> value : this.values.entrySet()) {
+            json.append(separator).append("    ").append(quote(value.getKey())).append(": ").append(number(value.getValue()));
+            separator = ",\n";
+        }
+        json.append(this.values.isEmpty() ? "},\n" : "\n  },\n");
+
+        // for each band, the buckets of at most 2^i documents, up to the largest size found
+        json.append("  \"bucketSizeHistograms\": [");
+        separator = "\n";
+        for (long[] histogram : this.bucketSizeHistograms) {
+            json.append(separator).append("    {");
+            int last = histogram.length - 1;
+            while (last >= 0 && histogram[last] == 0) {
+                last--;
+            }
+            for (int i = 0; i <= last; i++) {
+                json.append(i == 0 ? "" : ", ").append(quote("<=" + (1L << i))).append(": ").append(histogram[i]);
+            }
+            json.append("}");
+            separator = ",\n";
+        }
+        json.append(this.bucketSizeHistograms.length == 0 ? "],\n" : "\n  ],\n");
+
+        json.append("  \"peakHeapBytes\": ").append(getPeakHeap()).append("\n}");
+        return json.toString();
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // JSON has no NaN or infinity
+    private static String number(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d) ? "null" : String.format(Locale.ROOT, "%.6g", d);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.company;
+
+import java.util.function.LongConsumer;
+
+/**
+ * RollingShingleHasher
+ *
+ * Rabin-Karp style hasher for character shingles.
+ * The hash of the k-window is updated in O(1) for every character of the text:
+ *
+ *   h(i+1) = h(i) * BASE + c(i+k) - c(i) * BASE^k   (mod 2^64)
+ *
+ * so no substring, lower case copy or boxed value is created per shingle.
+ * The window hash is finally mixed to spread its bits, which gives stable 64-bit shingle ids
+ * (they only depend on the characters of the shingle).
+ */
+public class RollingShingleHasher {
+
+    /**
+     * BASE: odd multiplier of the polynomial hash (the 64-bit FNV prime)
+     */
+    private static final long BASE = 0x100000001B3L;
+
+    /**
+     * k: the size of the shingles in characters
+     * outFactor: BASE^k, used to remove the character that leaves the window
+     */
+    private final int k;
+    private final long outFactor;
+
+    /**
+     * RollingShingleHasher constructor
+     *
+     * @param k
+     */
+    public RollingShingleHasher(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+
+        long factor = 1;
+        for (int i = 0; i < k; i++) {
+            factor *= BASE;
+        }
+        this.outFactor = factor;
+    }
+
+    /**
+     * hash
+     *
+     * Gives to the consumer the id of every k-shingle of the text (characters are lower cased on the fly).
+     *
+     * @param text
+     * @param consumer
+     * @return number of shingles produced
+     */
+    public int hash(CharSequence text, LongConsumer consumer) {
+        int length = text.length();
+        if (length < this.k) {
+            return 0;
+        }
+
+        long window = 0;
+        // fill the first window
+        for (int i = 0; i < this.k; i++) {
+            window = window * BASE + Character.toLowerCase(text.charAt(i));
+        }
+        consumer.accept(mix(window));
+
+        // slide the window one character at a time
+        for (int i = this.k; i < length; i++) {
+            window = window * BASE
+                    + Character.toLowerCase(text.charAt(i))
+                    - Character.toLowerCase(text.charAt(i - this.k)) * this.outFactor;
+            consumer.accept(mix(window));
+        }
+        return length - this.k + 1;
+    }
+
+    /**
+     * mix
+     *
+     * 64-bit finalizer (MurmurHash3 fmix64): every bit of the input affects every bit of the output.
+     *
+     * @param h
+     * @return mixed value
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
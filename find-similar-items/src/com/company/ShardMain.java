@@ -0,0 +1,97 @@
+package com.company;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ShardMain
+ *
+ * Entry point of the sharded run: several worker processes each compute the signatures of a slice of the corpus,
+ * then the shards are merged and banded by a single LSH.
+ *
+ *   shard &lt;k&gt; &lt;mode&gt; &lt;shard&gt; &lt;shards&gt; &lt;input folder&gt; &lt;shard file&gt; [seed] [scheme]
+ *   merge &lt;threshold&gt; &lt;shard file&gt;...
+ *
+ * The files of the input folder are sorted by name, so every worker gives the same global id to a document.
+ */
+public class ShardMain {
+
+    /**
+     * SIGNATURE_LENGTH: number of rows of the signatures of the shards
+     */
+    private static final int SIGNATURE_LENGTH = 100;
+
+    // shingle the slice of the corpus of this worker and write its signatures
+    private static void shard(String[] args) throws IOException {
+        int k = Integer.parseInt(args[1]);
+        ShinglingMode mode = ShinglingMode.fromArgument(args[2]);
+        int shard = Integer.parseInt(args[3]);
+        int shards = Integer.parseInt(args[4]);
+        File folder = new File(args[5]);
+        File output = new File(args[6]);
+        long seed = args.length > 7 ? Long.parseLong(args[7]) : Shingling.DEFAULT_SEED;
+        SignatureScheme scheme = args.length > 8 ? SignatureScheme.fromArgument(args[8]) : SignatureScheme.K_HASH;
+
+        File[] files = folder.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Cannot list the input folder: " + folder);
+        }
+        Arrays.sort(files);
+        int[] slice = SignatureShard.slice(files.length, shard, shards);
+
+        Shingling shingling = new Shingling(k, mode, seed);
+        try (IngestionPipeline pipeline = new IngestionPipeline(shingling)) {
+            pipeline.ingest(Arrays.asList(files).subList(slice[0], slice[1]));
+        }
+        // a skipped file would shift the global ids of the next documents of the shard
+        if (shingling.getNumberOfDocuments() != slice[1] - slice[0]) {
+            throw new IOException((slice[1] - slice[0] - shingling.getNumberOfDocuments())
+                    + " files of the shard could not be read");
+        }
+        SignatureMatrix signatures = shingling.minHashing(SIGNATURE_LENGTH, scheme, true);
+        new SignatureShard(files.length, shards, slice[0] + 1, signatures, scheme, seed).write(output);
+
+        Main.console("SHARD:", shard + " of " + shards + ", documents " + (slice[0] + 1) + " to " + slice[1]);
+        Main.console("WRITTEN TO:", output);
+    }
+
+    // merge the shards and find the candidate pairs of the whole corpus
+    private static void merge(String[] args) throws IOException {
+        double threshold = Double.parseDouble(args[1]);
+        List<SignatureShard> shards = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            shards.add(SignatureShard.read(new File(args[i])));
+        }
+        SignatureMatrix signatures = SignatureShard.merge(shards);
+        Main.console("DOCUMENTS:", signatures.getNumberOfDocuments());
+
+        LSH lsh = new LSH(signatures);
+        LshParameters parameters = lsh.plan(threshold);
+        Main.console("LSH PARAMETERS: ", parameters);
+        for (long pair : lsh.findCandidates(parameters).toSortedArray()) {
+            int doc1 = DocumentPairs.first(pair);
+            int doc2 = DocumentPairs.second(pair);
+            Main.console(DocumentPairs.toString(pair) + "\tESTIMATE:", signatures.similarity(doc1, doc2));
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 7 && args[0].equals("shard")) {
+                shard(args);
+            } else if (args.length >= 3 && args[0].equals("merge")) {
+                merge(args);
+            } else {
+                System.err.println("Usage: shard <k> <mode> <shard> <shards> <input folder> <shard file> [seed] [scheme]");
+                System.err.println("       merge <threshold> <shard file>...");
+                System.exit(-1);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * ShingleHistogram
+ *
+ * The shingles of a document with the number of times each one appears:
+ * the shingle ids are sorted and distinct, counts[i] is the frequency of shingles[i].
+ */
+public class ShingleHistogram {
+
+    private final long[] shingles;
+    private final int[] counts;
+
+    /**
+     * ShingleHistogram constructor
+     *
+     * @param shingles sorted distinct shingle ids
+     * @param counts frequency of each shingle
+     */
+    public ShingleHistogram(long[] shingles, int[] counts) {
+        if (shingles.length != counts.length) {
+            throw new IllegalArgumentException("A count is needed for each shingle");
+        }
+        this.shingles = shingles;
+        this.counts = counts;
+    }
+
+    /**
+     * of
+     *
+     * @param shingles sorted distinct shingle ids
+     * @return histogram where every shingle appears once
+     */
+    public static ShingleHistogram of(long[] shingles) {
+        int[] counts = new int[shingles.length];
+        Arrays.fill(counts, 1);
+        return new ShingleHistogram(shingles, counts);
+    }
+
+    /**
+     * of
+     *
+     * @param occurrences every shingle of a document, in any order and with repetitions
+     * @return histogram of the shingles
+     */
+    public static ShingleHistogram of(LongArrayList occurrences) {
+        long[] sorted = occurrences.toArray();
+        Arrays.sort(sorted);
+
+        int distinct = 0;
+        int[] counts = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[distinct - 1]) {
+                counts[distinct - 1]++;
+            } else {
+                sorted[distinct] = sorted[i];
+                counts[distinct++] = 1;
+            }
+        }
+        return new ShingleHistogram(Arrays.copyOf(sorted, distinct), Arrays.copyOf(counts, distinct));
+    }
+
+    /**
+     * getShingles
+     *
+     * @return sorted distinct shingle ids
+     */
+    public long[] getShingles() {
+        return this.shingles;
+    }
+
+    /**
+     * getCounts
+     *
+     * @return frequency of each shingle
+     */
+    public int[] getCounts() {
+        return this.counts;
+    }
+
+    /**
+     * size
+     *
+     * @return number of distinct shingles
+     */
+    public int size() {
+        return this.shingles.length;
+    }
+}
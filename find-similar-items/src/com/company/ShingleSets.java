@@ -0,0 +1,181 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * ShingleSets
+ *
+ * Utility functions over the shingle set of a document,
+ * represented as a sorted array of distinct shingle ids.
+ */
+public class ShingleSets {
+
+    /**
+     * GALLOPING_RATIO: when a set is this many times larger than the other one
+     * the intersection searches the elements of the smaller set instead of merging the two sets
+     */
+    private static final int GALLOPING_RATIO = 32;
+
+    private ShingleSets() {
+    }
+
+    /**
+     * sortedSet
+     *
+     * @param values
+     * @param length number of values to consider
+     * @return sorted copy of the first length values, without duplicates
+     */
+    public static long[] sortedSet(long[] values, int length) {
+        long[] set = Arrays.copyOf(values, length);
+        Arrays.sort(set);
+
+        int distinct = 0;
+        for (int i = 0; i < set.length; i++) {
+            if (i == 0 || set[i] != set[distinct - 1]) {
+                set[distinct++] = set[i];
+            }
+        }
+        return distinct == set.length ? set : Arrays.copyOf(set, distinct);
+    }
+
+    /**
+     * intersectionSize
+     *
+     * Linear merge of the two sets, or galloping search when the sizes are skewed
+     *
+     * @param set1
+     * @param set2
+     * @return number of shingles in common
+     */
+    public static int intersectionSize(long[] set1, long[] set2) {
+        if (set1.length > set2.length) {
+            long[] swap = set1;
+            set1 = set2;
+            set2 = swap;
+        }
+        if (set1.length == 0) {
+            return 0;
+        }
+        if (set2.length / set1.length >= GALLOPING_RATIO) {
+            return gallopingIntersectionSize(set1, set2);
+        }
+
+        int common = 0;
+        int i = 0, j = 0;
+        while (i < set1.length && j < set2.length) {
+            if (set1[i] < set2[j]) {
+                i++;
+            } else if (set1[i] > set2[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * intersectionSize
+     *
+     * Linear merge of the two sets that stops as soon as minCommon shingles in common cannot be reached
+     *
+     * @param set1
+     * @param set2
+     * @param minCommon
+     * @return number of shingles in common, or -1 if it is less than minCommon
+     */
+    public static int intersectionSize(long[] set1, long[] set2, int minCommon) {
+        if (Math.min(set1.length, set2.length) < minCommon) {
+            return -1;
+        }
+        int common = 0;
+        int i = 0, j = 0;
+        while (i < set1.length && j < set2.length) {
+            if (set1[i] < set2[j]) {
+                i++;
+                if (common + Math.min(set1.length - i, set2.length - j) < minCommon) {
+                    return -1;
+                }
+            } else if (set1[i] > set2[j]) {
+                j++;
+                if (common + Math.min(set1.length - i, set2.length - j) < minCommon) {
+                    return -1;
+                }
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return common >= minCommon ? common : -1;
+    }
+
+    /**
+     * jaccard
+     *
+     * @param set1
+     * @param set2
+     * @return size of the intersection / size of the union
+     */
+    public static float jaccard(long[] set1, long[] set2) {
+        int common = intersectionSize(set1, set2);
+        return (float) common / (float) (set1.length + set2.length - common);
+    }
+
+    /**
+     * weightedJaccard
+     *
+     * @param set1
+     * @param counts1 frequency of each shingle of set1
+     * @param set2
+     * @param counts2 frequency of each shingle of set2
+     * @return sum of the minimum frequencies / sum of the maximum frequencies of the shingles
+     */
+    public static float weightedJaccard(long[] set1, int[] counts1, long[] set2, int[] counts2) {
+        long minimums = 0, maximums = 0;
+        int i = 0, j = 0;
+        while (i < set1.length || j < set2.length) {
+            if (j == set2.length || (i < set1.length && set1[i] < set2[j])) {
+                maximums += counts1[i++];
+            } else if (i == set1.length || set1[i] > set2[j]) {
+                maximums += counts2[j++];
+            } else {
+                minimums += Math.min(counts1[i], counts2[j]);
+                maximums += Math.max(counts1[i], counts2[j]);
+                i++;
+                j++;
+            }
+        }
+        return maximums == 0 ? 0 : (float) minimums / (float) maximums;
+    }
+
+    // intersection of a small set with a large one: exponential search followed by binary search
+    private static int gallopingIntersectionSize(long[] small, long[] large) {
+        int common = 0;
+        int low = 0;
+        for (long value : small) {
+            // gallop until the value is inside [low, high]
+            int step = 1;
+            int high = low;
+            while (high < large.length && large[high] < value) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(large, low, Math.min(high + 1, large.length), value);
+            if (position >= 0) {
+                common++;
+                low = position + 1;
+            } else {
+                low = -position - 1;
+            }
+            if (low >= large.length) {
+                break;
+            }
+        }
+        return common;
+    }
+}
@@ -1,11 +1,9 @@
 package com.company;
 
 
-import java.math.BigInteger;
+import java.io.IOException;
 import java.text.BreakIterator;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * A class Shingling that
@@ -17,30 +15,59 @@ public class Shingling {
 
 
     /**
-     * byWord: boolean flag use to create shingles by word or by characters
+     * mode: how the shingles are created (by word, by characters or by characters with a rolling hash)
      */
-    private boolean byWord;
+    private ShinglingMode mode;
 
     /**
-     *  k: the size of the shingles (in chars or words, depending on the byWord flag)
+     * DEFAULT_SEED: seed of the hash functions used by minHashing when no seed is given
+     */
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     *  k: the size of the shingles (in chars or words, depending on the mode)
      *  numberOfDocuments: a counter of docuemnts that have been ingested by the class
      */
     private int k, numberOfDocuments;
 
     /**
-     * shingles: a map of shingles
-     *
-     * key: shingle hash code
-     * values: document ids having that shingle in their sets
-     *
+     * seed: seed of the hash functions used by minHashing (same seed, same signatures)
+     */
+    private long seed;
+
+    /**
+     * documentShingles: the shingle set of each document (sorted shingle ids), the first element is document 1
+     */
+    private ArrayList<long[]> documentShingles;
+
+    /**
+     * documentCounts: how many times each shingle of documentShingles appears in the document,
+     * null unless the Shingling keeps them (only the weighted signatures use them)
+     */
+    private ArrayList<int[]> documentCounts;
+
+    /**
+     * rollingHasher: hasher used by the ROLLING_CHARACTER mode
+     * wordHasher: hasher used by the HASHED_WORD mode
      */
-    private Map<Integer, ArrayList<Integer>> shingles;
+    private RollingShingleHasher rollingHasher;
+    private WordShingleHasher wordHasher;
 
 
     /**
      * signatureMatrix: matrix of signatures that will be used by the LSH object
      */
-    private Integer[][] signatureMatrix;
+    private SignatureMatrix signatureMatrix;
+
+    /**
+     * bBitSignatures: signatures keeping only the lowest b bits of each row (replace signatureMatrix when computed)
+     */
+    private BBitSignatureMatrix bBitSignatures;
+
+    /**
+     * sketches: KMV sketch of the shingle set of each document, computed by kmvSketching
+     */
+    private KmvSketch[] sketches;
 
 
     /**
@@ -50,13 +77,56 @@ public class Shingling {
      * @param byWord
      */
     public Shingling(Integer k, boolean byWord) {
+        this(k, byWord ? ShinglingMode.WORD : ShinglingMode.CHARACTER);
+    }
+
+    /**
+     * Shingling constructor
+     *
+     * @param k
+     * @param mode
+     */
+    public Shingling(Integer k, ShinglingMode mode) {
+        this(k, mode, DEFAULT_SEED);
+    }
+
+    /**
+     * Shingling constructor
+     *
+     * @param k
+     * @param mode
+     * @param seed
+     */
+    public Shingling(Integer k, ShinglingMode mode, long seed) {
+        this(k, mode, seed, false);
+    }
+
+    /**
+     * Shingling constructor
+     *
+     * @param k
+     * @param mode
+     * @param seed
+     * @param keepCounts true to keep the frequency of the shingles of each document, needed by
+     *                   weightedMinHashing, simHashing and weightedJaccardSimilarity
+     */
+    public Shingling(Integer k, ShinglingMode mode, long seed, boolean keepCounts) {
         // Inizialize the shingle with a map
         // The map is shared by all the documents
         // Set the k that will be in common among all the documents
         this.k = k;
-        this.byWord = byWord;
-        this.shingles = new HashMap<>();
+        this.mode = mode;
+        this.seed = seed;
+        this.documentShingles = new ArrayList<>();
+        this.documentCounts = keepCounts ? new ArrayList<>() : null;
         this.numberOfDocuments = 0;
+
+        if (mode == ShinglingMode.ROLLING_CHARACTER) {
+            this.rollingHasher = new RollingShingleHasher(k);
+        }
+        if (mode == ShinglingMode.HASHED_WORD) {
+            this.wordHasher = new WordShingleHasher(k);
+        }
     }
 
     /**
@@ -65,13 +135,70 @@ public class Shingling {
      * @param fullText
      * */
     public void shingleADocument(String fullText) {
+        addShingleHistogram(shingleHistogram(fullText));
+    }
+
+    /**
+     * addShingleSet function
+     *
+     * Adds a document from its shingle set (see shingleSet). Several threads can compute shingle sets
+     * concurrently and add them: the documents are numbered in the order they are added.
+     *
+     * @param shingleSet sorted shingle ids of the document, without duplicates
+     * @return id of the document
+     */
+    public int addShingleSet(long[] shingleSet) {
+        return addShingleHistogram(ShingleHistogram.of(shingleSet));
+    }
+
+    /**
+     * addShingleHistogram function
+     *
+     * Adds a document from its shingles and their frequencies (see shingleHistogram).
+     * Several threads can compute histograms concurrently and add them: the documents are numbered in the order
+     * they are added.
+     *
+     * @param histogram
+     * @return id of the document
+     */
+    public synchronized int addShingleHistogram(ShingleHistogram histogram) {
 
         // Increase the number of documents
         this.numberOfDocuments++;
 
+        this.documentShingles.add(histogram.getShingles());
+        if (this.documentCounts != null) {
+            this.documentCounts.add(histogram.getCounts());
+        }
+        return this.numberOfDocuments;
+    }
+
+    /**
+     * shingleSet function
+     *
+     * Computes the shingles of a text without adding it to the documents
+     *
+     * @param fullText
+     * @return sorted shingle ids of the text, without duplicates
+     */
+    public long[] shingleSet(String fullText) {
+        return shingleHistogram(fullText).getShingles();
+    }
+
+    /**
+     * shingleHistogram function
+     *
+     * Computes the shingles of a text, with the number of times each one appears, without adding it to the documents
+     *
+     * @param fullText
+     * @return the shingle histogram of the text
+     */
+    public ShingleHistogram shingleHistogram(String fullText) {
+
+        LongArrayList shingleIds = new LongArrayList(fullText.length());
+
         // if the shingling has to be done by word
-        if (this.byWord) {
-            System.out.println("Shingling by words...");
+        if (this.mode == ShinglingMode.WORD) {
             ArrayList<String> words = new ArrayList<String>();
             BreakIterator breakIterator = BreakIterator.getWordInstance();
             breakIterator.setText(fullText);
@@ -83,7 +210,6 @@ public class Shingling {
                     words.add(fullText.substring(firstIndex, lastIndex));
                 }
             }
-            System.out.println("Word count: "+words.size());
 
             for (int i = 0; i < words.size()-this.k; i++) {
 
@@ -95,55 +221,31 @@ public class Shingling {
                 }
 
                 // get the current shingle and hash it
-                Integer currentShingle = kWords.hashCode();
-
-                if(this.shingles.containsKey(currentShingle)) {
-                    // if the shingle is already in the map, get the arrayList with all the documents that have that shingle
-                    ArrayList<Integer> documentsWithThisShingle = (ArrayList<Integer>) this.shingles.get(currentShingle);
-
-                    // if the current document that I am analysing does already have this single previously, don't do anything (is already here)
-                    // Otherwise add it to the list
-                    if(!documentsWithThisShingle.contains(this.numberOfDocuments)){
-                        documentsWithThisShingle.add(this.numberOfDocuments);
-                        this.shingles.replace(currentShingle, documentsWithThisShingle);
-                    }
-                } else {
-                    // if this shingle is not yet in the map, add it and map it with the current document
-                    ArrayList<Integer> documentsWithThisShingle = new ArrayList<>();
-                    documentsWithThisShingle.add(this.numberOfDocuments);
-                    this.shingles.put(currentShingle, documentsWithThisShingle);
-                }
+                shingleIds.add(kWords.hashCode());
             }
 
 
+        } else if (this.mode == ShinglingMode.ROLLING_CHARACTER) {
+            // the shingling has to be done by character, the rolling hasher gives the id of each k-window
+            this.rollingHasher.hash(fullText, shingleIds::add);
+
+        } else if (this.mode == ShinglingMode.HASHED_WORD) {
+            // the shingling has to be done by word, the word hasher gives the id of each window of k words
+            this.wordHasher.hash(fullText, shingleIds::add);
+
         } else {
             // the shingling has to be done by character
             for (int i = 0; i <fullText.length()-k; i++) {
 
                 // get the current shingle and hash it
-                Integer currentShingle = fullText
+                shingleIds.add(fullText
                         .substring(i, i+k)
                         .toLowerCase()
-                        .hashCode();
-
-                if(this.shingles.containsKey(currentShingle)) {
-                    // if the shingle is already in the map, get the arrayList with all the documents that have that shingle
-                    ArrayList<Integer> documentsWithThisShingle = (ArrayList<Integer>) this.shingles.get(currentShingle);
-
-                    // if the current document that I am analysing does already have this single previously, don't do anything (is already here)
-                    // Otherwise add it to the list
-                    if(!documentsWithThisShingle.contains(this.numberOfDocuments)){
-                        documentsWithThisShingle.add(this.numberOfDocuments);
-                        this.shingles.replace(currentShingle, documentsWithThisShingle);
-                    }
-                } else {
-                    // if this shingle is not yet in the map, add it and map it with the current document
-                    ArrayList<Integer> documentsWithThisShingle = new ArrayList<>();
-                    documentsWithThisShingle.add(this.numberOfDocuments);
-                    this.shingles.put(currentShingle, documentsWithThisShingle);
-                }
+                        .hashCode());
             }
         }
+
+        return ShingleHistogram.of(shingleIds);
     }
 
 
@@ -151,6 +253,7 @@ public class Shingling {
      * jaccardSimilarity function
      *
      * This function allows to compare two documents according to Jaccard Similarity
+     * (linear merge of the two sorted shingle sets)
      *
      * @param set1
      * @param set2
@@ -158,21 +261,11 @@ public class Shingling {
      */
     public float jaccardSimilarity(Integer set1, Integer set2) {
 
-        int shinglesInCommon = 0; // Shingles intersection
-        int shinglesInTotal = 0; // Shingles union
+        long[] shingles1 = getDocumentShingles(set1);
+        long[] shingles2 = getDocumentShingles(set2);
 
-        for (Map.Entry<Integer, ArrayList<Integer>> shingle: this.shingles.entrySet()) {
-
-            // check each shingle if it is present in both the documents, if yes I add it in the numerator
-            if (shingle.getValue().contains(set1) && shingle.getValue().contains(set2)) {
-                shinglesInCommon++;
-            }
-
-            // check each shingle, if it is present one of the two documents, add it to the denominator
-            if (shingle.getValue().contains(set1) || shingle.getValue().contains(set2)) {
-                shinglesInTotal++;
-            }
-        }
+        int shinglesInCommon = ShingleSets.intersectionSize(shingles1, shingles2); // Shingles intersection
+        int shinglesInTotal = shingles1.length + shingles2.length - shinglesInCommon; // Shingles union
 
         System.out.println("Shingles in common:\t" + shinglesInCommon);
         System.out.println("Shingles in total:\t" + shinglesInTotal);
@@ -180,80 +273,226 @@ public class Shingling {
         return (float) shinglesInCommon/ (float) shinglesInTotal;
     }
 
+    /**
+     * weightedJaccardSimilarity function
+     *
+     * Jaccard similarity of the documents where each shingle counts as many times as it appears
+     *
+     * @param set1
+     * @param set2
+     * @return sum of the minimum frequencies / sum of the maximum frequencies of the shingles
+     */
+    public float weightedJaccardSimilarity(int set1, int set2) {
+        return ShingleSets.weightedJaccard(getDocumentShingles(set1), getDocumentCounts(set1),
+                getDocumentShingles(set2), getDocumentCounts(set2));
+    }
+
     /**
      * minHashing function
      *
+     * The signatures of the documents are computed in parallel
+     *
      * @param numberOfHashFunction
      * @return matrix of signatures
      */
-    public Integer[][] minHashing(int numberOfHashFunction){
+    public SignatureMatrix minHashing(int numberOfHashFunction){
+        return minHashing(numberOfHashFunction, true);
+    }
+
+    /**
+     * minHashing function
+     *
+     * Each document computes its signature from its own shingle set, so the documents can be split among threads:
+     * the signatures are the same with or without parallelism for a given seed.
+     *
+     * @param numberOfHashFunction
+     * @param parallel
+     * @return matrix of signatures
+     */
+    public SignatureMatrix minHashing(int numberOfHashFunction, boolean parallel){
+        return minHashing(numberOfHashFunction, SignatureScheme.K_HASH, parallel);
+    }
+
+    /**
+     * minHashing function
+     *
+     * With the ONE_PERMUTATION scheme each shingle is hashed once instead of once per hash function,
+     * the signature has the same length and can be used by the LSH in the same way.
+     *
+     * @param numberOfHashFunction length of the signature
+     * @param scheme
+     * @param parallel
+     * @return matrix of signatures
+     */
+    public SignatureMatrix minHashing(int numberOfHashFunction, SignatureScheme scheme, boolean parallel){
+
+        // seeded hash functions (a * x + b) mod p, the same seed gives the same functions
+        MinHasher minHasher = new MinHasher(numberOfHashFunction, this.seed, scheme);
 
         // Signature matrix
-        this.signatureMatrix = new Integer[numberOfHashFunction][this.numberOfDocuments];
+        this.signatureMatrix = minHasher.signatures(this.documentShingles, parallel);
+        this.bBitSignatures = null;
 
+        // printMatrix(this.signatureMatrix);
+        return this.signatureMatrix;
+    }
 
-        // creating a matrix that allows to create random hash functions and to reuse them during the process.
-        // values can be something in between 1 and 100 [range is our arbitrary choice]
-        int[][] hashFunctionParameters = new int[numberOfHashFunction][3];
+    /**
+     * externalMinHashing function
+     *
+     * Computes the signatures of the documents of an external index (see IngestionPipeline.ingest(files, index)):
+     * the shingles are merged from disk, the signatures are the same as the ones of minHashing for the same seed.
+     *
+     * @param index
+     * @param numberOfHashFunction length of the signature
+     * @param scheme
+     * @return matrix of signatures
+     * @throws IOException if the runs of the index cannot be read
+     */
+    public SignatureMatrix externalMinHashing(ExternalShingleIndex index, int numberOfHashFunction, SignatureScheme scheme)
+            throws IOException {
 
-        for (int i = 0; i < hashFunctionParameters.length; i++) {
+        MinHasher minHasher = new MinHasher(numberOfHashFunction, this.seed, scheme);
 
-            // for the third element I should get a prime number. Explore possibilities in this sense
-            for (int j = 0; j < hashFunctionParameters[i].length; j++) {
-                hashFunctionParameters[i][j] = 1 + (int)(Math.random() * ((1048576 - 1) + 1));
-            }
-        }
+        this.signatureMatrix = index.signatures(minHasher);
+        this.bBitSignatures = null;
+        return this.signatureMatrix;
+    }
 
-        // implement the minHashing algorithm according to slides
-        for (Map.Entry<Integer, ArrayList<Integer>> row: this.shingles.entrySet()) {
-            // compute the hashfunctions and save the result
-            int[] hashFunctionsRowResults = new int[hashFunctionParameters.length];
-
-            for (int i = 0; i < hashFunctionParameters.length; i++) {
-                hashFunctionsRowResults[i] = randomHashFunction(
-                        row.getKey(),
-                        hashFunctionParameters[i][0],
-                        hashFunctionParameters[i][1],
-                        hashFunctionParameters[i][2]);
-            }
+    /**
+     * weightedMinHashing function
+     *
+     * Computes weighted MinHash signatures (ICWS) from the frequency of the shingles of each document:
+     * compareSignatures then estimates the weighted Jaccard similarity, and the LSH bands them as the other signatures.
+     * The Shingling must keep the counts (see the keepCounts constructor).
+     *
+     * @param numberOfHashFunction length of the signature
+     * @param parallel
+     * @return matrix of signatures
+     */
+    public SignatureMatrix weightedMinHashing(int numberOfHashFunction, boolean parallel){
 
-            // compute each column (document) and save the result in the matrix
-            for (int i = 0; i < this.numberOfDocuments; i++) {
-                if(row.getValue().contains(i+1)) { // add 1 since I save 1 and not 0 as first document
-                    for (int j = 0; j < hashFunctionsRowResults.length; j++) {
+        WeightedMinHasher minHasher = new WeightedMinHasher(numberOfHashFunction, this.seed);
 
-                        if (this.signatureMatrix[j][i] == null || hashFunctionsRowResults[j] < this.signatureMatrix[j][i]) {
-                            this.signatureMatrix[j][i] = hashFunctionsRowResults[j];
-                        }
-                    }
-                }
-            }
-        }
-        // printMatrix(this.signatureMatritrix);
+        this.signatureMatrix = minHasher.signatures(this.documentShingles, documentCounts(), parallel);
+        this.bBitSignatures = null;
         return this.signatureMatrix;
     }
 
     /**
-     * randomHashFunction
+     * kmvSketching function
      *
-     * @param shingle
-     * @param a
-     * @param b
-     * @param mod
+     * Computes the bottom-k sketch of each document, kept next to the signatures:
+     * the containment, union size and Jaccard similarity of two documents are then estimated from the sketches alone
      *
-     * @return
+     * @param k number of hashes kept per document
+     * @param parallel
+     * @return sketch of each document (the one of document d is at d - 1)
      */
-    private int randomHashFunction(int shingle, int a, int b, int mod) {
-        return ((BigInteger.valueOf(a).multiply(BigInteger.valueOf(shingle))).add(BigInteger.valueOf(b))).mod(BigInteger.valueOf(mod)).intValue();
+    public KmvSketch[] kmvSketching(int k, boolean parallel){
+
+        KmvSketch[] sketches = new KmvSketch[this.numberOfDocuments];
+        DocumentTasks.forEachDocument(this.numberOfDocuments, parallel,
+                doc -> sketches[doc - 1] = KmvSketch.of(getDocumentShingles(doc), k, this.seed));
+        this.sketches = sketches;
+        return sketches;
+    }
+
+    /**
+     * estimateContainment function
+     *
+     * Quote detection: how much of the first document appears in the second one (see kmvSketching)
+     *
+     * @param set1
+     * @param set2
+     * @return estimated fraction of the shingles of set1 that are also in set2
+     */
+    public double estimateContainment(int set1, int set2) {
+        return getSketch(set1).containment(getSketch(set2));
+    }
+
+    /**
+     * getSketch
+     *
+     * @param doc (the first document is 1)
+     * @return KMV sketch of the document, once kmvSketching is done
+     */
+    public KmvSketch getSketch(int doc) {
+        if (this.sketches == null) {
+            throw new IllegalStateException("kmvSketching has not been run");
+        }
+        return this.sketches[doc - 1];
     }
 
+    /**
+     * bBitMinHashing function
+     *
+     * Computes the signatures keeping only the lowest b bits of each row, packed in longs:
+     * compareSignatures then corrects the estimate for the rows that agree by chance.
+     * The full signature matrix is not kept (getSignatureMatrix returns null).
+     *
+     * @param numberOfHashFunction length of the signature
+     * @param b bits kept per row (1, 2, 4, 8, 16 or 32)
+     * @param scheme
+     * @param parallel
+     * @return packed b-bit signatures
+     */
+    public BBitSignatureMatrix bBitMinHashing(int numberOfHashFunction, int b, SignatureScheme scheme, boolean parallel){
+
+        MinHasher minHasher = new MinHasher(numberOfHashFunction, this.seed, scheme);
+
+        this.bBitSignatures = minHasher.bBitSignatures(this.documentShingles, b, parallel);
+        this.signatureMatrix = null;
+        return this.bBitSignatures;
+    }
+
+    /**
+     * similarityJoin function
+     *
+     * @param threshold minimum Jaccard similarity
+     * @return exact join of the documents added so far (see SimilarityJoin.join)
+     */
+    public SimilarityJoin similarityJoin(double threshold){
+        return new SimilarityJoin(this.documentShingles, threshold);
+    }
+
+    /**
+     * candidateVerifier function
+     *
+     * @param threshold minimum Jaccard similarity
+     * @return verifier of candidate pairs against the shingle sets of the documents
+     */
+    public CandidateVerifier candidateVerifier(double threshold){
+        return new CandidateVerifier(this.documentShingles, threshold);
+    }
+
+    /**
+     * simHashing function
+     *
+     * Computes the SimHash fingerprint of each document, the shingles weighted by their frequency:
+     * with word shingles the Hamming distance of two fingerprints estimates the cosine similarity of the documents.
+     * The Shingling must keep the counts (see the keepCounts constructor).
+     *
+     * @param bits length of the fingerprints (64 or 128)
+     * @return fingerprint of each document (the one of document d is at d - 1)
+     */
+    public long[][] simHashing(int bits){
+
+        SimHash simHash = new SimHash(bits, this.seed);
+
+        long[][] fingerprints = new long[this.numberOfDocuments][];
+        for (int doc = 1; doc <= this.numberOfDocuments; doc++) {
+            fingerprints[doc - 1] = simHash.fingerprint(getDocumentShingles(doc), getDocumentCounts(doc));
+        }
+        return fingerprints;
+    }
 
     /**
      * getSignatureMatrix getter
      *
      * @return signatureMatrix
      */
-    public Integer[][] getSignatureMatrix() {
+    public SignatureMatrix getSignatureMatrix() {
         return this.signatureMatrix;
     }
 
@@ -267,15 +506,13 @@ public class Shingling {
      */
     public float compareSignatures(int set1, int set2) {
 
-        int signaturesInCommon = 0; // Signatures that are in both the documents
-        int signaturesInTotal = this.signatureMatrix.length; // number of hash functions in the signature
-
-        for (int i = 0; i < this.signatureMatrix.length; i++) {
-            if (signatureMatrix[i][set1-1] == signatureMatrix[i][set2-1]) {
-                signaturesInCommon++;
-            }
+        if (this.bBitSignatures != null) {
+            return compareBBitSignatures(set1, set2);
         }
 
+        int signaturesInCommon = this.signatureMatrix.agreements(set1, set2); // Signatures that are in both the documents
+        int signaturesInTotal = this.signatureMatrix.length(); // number of hash functions in the signature
+
         System.out.println("Signatures in common:\t" + signaturesInCommon);
         System.out.println("Signatures in total:\t" + signaturesInTotal);
 
@@ -283,12 +520,78 @@ public class Shingling {
     }
 
     /**
-     * getShingles
+     * compareBBitSignatures
      *
-     * @return matrix of signatures
+     * The fraction of rows with the same lowest b bits is corrected for the rows that agree by chance
+     *
+     * @param set1
+     * @param set2
+     * @return estimated Jaccard similarity
+     */
+    private float compareBBitSignatures(int set1, int set2) {
+
+        int signaturesInCommon = this.bBitSignatures.matches(set1, set2); // rows with the same lowest b bits
+        int signaturesInTotal = this.bBitSignatures.length(); // number of hash functions in the signature
+
+        System.out.println("Signatures in common:\t" + signaturesInCommon + " (" + this.bBitSignatures.getB() + " bits)");
+        System.out.println("Signatures in total:\t" + signaturesInTotal);
+
+        return this.bBitSignatures.similarity(set1, set2,
+                getDocumentShingles(set1).length, getDocumentShingles(set2).length);
+    }
+
+    /**
+     * getBBitSignatures
+     *
+     * @return b-bit signatures, null if they have not been computed
+     */
+    public BBitSignatureMatrix getBBitSignatures() {
+        return this.bBitSignatures;
+    }
+
+    /**
+     * getNumberOfDistinctShingles
+     *
+     * Counts the distinct shingles of all the documents (computed on demand, nothing is kept while ingesting)
+     *
+     * @return number of distinct shingle ids
+     */
+    public int getNumberOfDistinctShingles() {
+        LongHashSet distinct = new LongHashSet();
+        for (long[] shingleSet : this.documentShingles) {
+            for (long shingle : shingleSet) {
+                distinct.add(shingle);
+            }
+        }
+        return distinct.size();
+    }
+
+    /**
+     * getDocumentShingles
+     *
+     * @param doc (the first document is 1)
+     * @return sorted shingle ids of the document
      */
-    public Map<Integer, ArrayList<Integer>> getShingles() {
-        return this.shingles;
+    public long[] getDocumentShingles(int doc) {
+        return this.documentShingles.get(doc - 1);
+    }
+
+    /**
+     * getDocumentCounts
+     *
+     * @param doc (the first document is 1)
+     * @return how many times each shingle of getDocumentShingles(doc) appears in the document
+     * @throws IllegalStateException if the counts are not kept
+     */
+    public int[] getDocumentCounts(int doc) {
+        return documentCounts().get(doc - 1);
+    }
+
+    private ArrayList<int[]> documentCounts() {
+        if (this.documentCounts == null) {
+            throw new IllegalStateException("The shingle counts are not kept: create the Shingling with keepCounts");
+        }
+        return this.documentCounts;
     }
 
     /**
@@ -303,9 +606,9 @@ public class Shingling {
     public String getInfo() {
         String info = "";
         info += "K: " + this.k;
-        info += "\nBY WORD: " + this.byWord;
+        info += "\nMODE: " + this.mode;
         info += "\nNUM OF DOCS: " + this.numberOfDocuments;
-        info += "\nSIZE: " + this.shingles.size();
+        info += "\nSIZE: " + getNumberOfDistinctShingles();
 
         return info;
     }
@@ -315,10 +618,10 @@ public class Shingling {
      * Utility function to print the matrix.
      *
      */
-    private void printMatrix(Integer[][] matrix) {
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < matrix[i].length; j++) {
-                System.out.print(matrix[i][j] + " ");
+    private void printMatrix(SignatureMatrix matrix) {
+        for (int i = 0; i < matrix.length(); i++) {
+            for (int j = 1; j <= matrix.getNumberOfDocuments(); j++) {
+                System.out.print(matrix.get(j, i) + " ");
             }
             System.out.println();
         }
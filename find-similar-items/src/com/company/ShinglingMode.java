@@ -0,0 +1,48 @@
+package com.company;
+
+/**
+ * ShinglingMode
+ *
+ * The ways a document can be cut into shingles by the Shingling class.
+ */
+public enum ShinglingMode {
+
+    /**
+     * CHARACTER: k consecutive characters, hashed with String.hashCode()
+     */
+    CHARACTER,
+
+    /**
+     * WORD: k consecutive words, concatenated and hashed with String.hashCode()
+     */
+    WORD,
+
+    /**
+     * ROLLING_CHARACTER: k consecutive characters, hashed with a 64-bit rolling hash (no allocation per shingle)
+     */
+    ROLLING_CHARACTER,
+
+    /**
+     * HASHED_WORD: k consecutive words, each word hashed once and the k hashes combined in a ring buffer
+     */
+    HASHED_WORD;
+
+    /**
+     * fromArgument
+     *
+     * Parses the command line argument: "true"/"false" are kept for the old by-word flag,
+     * otherwise the name of the mode is expected (e.g. "rolling_character" or "hashed-word").
+     *
+     * @param argument
+     * @return the shingling mode
+     */
+    public static ShinglingMode fromArgument(String argument) {
+        if ("true".equalsIgnoreCase(argument)) {
+            return WORD;
+        }
+        if ("false".equalsIgnoreCase(argument)) {
+            return CHARACTER;
+        }
+        return ShinglingMode.valueOf(argument.trim().replace('-', '_').toUpperCase());
+    }
+}
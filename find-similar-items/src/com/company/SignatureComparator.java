@@ -0,0 +1,116 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SignatureComparator
+ *
+ * Bulk comparison of signatures: one query signature against a block of stored ones,
+ * e.g. to rank the candidates of the LSH buckets by their estimated similarity (see OnlineLshIndex).
+ * When only the signatures above a threshold are wanted, the rows are compared a block at a time
+ * and a signature is left as soon as the rows not compared yet cannot reach the threshold any more:
+ * most candidates of the buckets are far below it and are left after a few blocks.
+ */
+public class SignatureComparator {
+
+    /**
+     * BLOCK: number of rows compared between two checks of the threshold
+     */
+    private static final int BLOCK = 16;
+
+    private SignatureComparator() {
+    }
+
+    /**
+     * agreements
+     *
+     * @param values1
+     * @param offset1 position of the first row of the first signature
+     * @param values2
+     * @param offset2 position of the first row of the second signature
+     * @param length number of rows
+     * @return number of rows where the two signatures have the same value
+     */
+    public static int agreements(int[] values1, int offset1, int[] values2, int offset2, int length) {
+        int agreements = 0;
+        for (int row = 0; row < length; row++) {
+            if (values1[offset1 + row] == values2[offset2 + row]) {
+                agreements++;
+            }
+        }
+        return agreements;
+    }
+
+    /**
+     * agreements
+     *
+     * Compares the rows a block at a time, and stops when minAgreements cannot be reached
+     *
+     * @param values1
+     * @param offset1 position of the first row of the first signature
+     * @param values2
+     * @param offset2 position of the first row of the second signature
+     * @param length number of rows
+     * @param minAgreements number of agreeing rows wanted
+     * @return number of rows where the two signatures have the same value if it is at least minAgreements,
+     * a smaller number otherwise
+     */
+    public static int agreements(int[] values1, int offset1, int[] values2, int offset2, int length, int minAgreements) {
+        int agreements = 0;
+        for (int block = 0; block < length; block += BLOCK) {
+            int end = Math.min(length, block + BLOCK);
+            for (int row = block; row < end; row++) {
+                if (values1[offset1 + row] == values2[offset2 + row]) {
+                    agreements++;
+                }
+            }
+            // even if all the rows left agree
+            if (agreements + length - end < minAgreements) {
+                return agreements;
+            }
+        }
+        return agreements;
+    }
+
+    /**
+     * agreements
+     *
+     * @param query signature of the given length
+     * @param values stored signatures, the one of document d from (d - 1) * length (as in SignatureMatrix)
+     * @param length number of rows of the signatures
+     * @param docs documents to compare with the query
+     * @param count number of documents in docs
+     * @param result receives the number of rows each document agrees on with the query (result[i] for docs[i])
+     */
+    public static void agreements(int[] query, int[] values, int length, int[] docs, int count, int[] result) {
+        for (int i = 0; i < count; i++) {
+            result[i] = agreements(query, 0, values, (docs[i] - 1) * length, length);
+        }
+    }
+
+    /**
+     * rank
+     *
+     * @param query signature of the given length
+     * @param values stored signatures, the one of document d from (d - 1) * length (as in SignatureMatrix)
+     * @param length number of rows of the signatures
+     * @param docs candidate documents (e.g. from the LSH buckets of the query)
+     * @param count number of documents in docs
+     * @param similarity minimum estimated similarity of the results (see LshParameters.minAgreements)
+     * @return the candidates at least that similar to the query, the most similar first
+     */
+    public static List<OnlineLshIndex.Match> rank(int[] query, int[] values, int length, int[] docs, int count,
+                                                  double similarity) {
+        int minAgreements = LshParameters.minAgreements(similarity, length);
+        List<OnlineLshIndex.Match> matches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int agreements = agreements(query, 0, values, (docs[i] - 1) * length, length, minAgreements);
+            if (agreements >= minAgreements) {
+                matches.add(new OnlineLshIndex.Match(docs[i], agreements / (float) length));
+            }
+        }
+        matches.sort((match1, match2) -> Float.compare(match2.getSimilarity(), match1.getSimilarity()));
+        return matches;
+    }
+}
@@ -0,0 +1,142 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * SignatureMatrix
+ *
+ * MinHash signatures of all the documents, stored in a single int array.
+ * The signature of each document is contiguous (values[(doc - 1) * length + row]),
+ * so comparing two documents or hashing a band reads consecutive memory.
+ *
+ * As everywhere else in the project, the first document is 1.
+ */
+public class SignatureMatrix {
+
+    /**
+     * EMPTY: value of a row that has not seen any shingle (greater than every hash value)
+     */
+    public static final int EMPTY = Integer.MAX_VALUE;
+
+    /**
+     * values: the signatures, one after the other
+     */
+    private final int[] values;
+
+    /**
+     * length: number of rows (hash functions) of each signature
+     * numberOfDocuments: number of signatures
+     */
+    private final int length, numberOfDocuments;
+
+    /**
+     * SignatureMatrix constructor
+     *
+     * @param numberOfDocuments
+     * @param length number of hash functions
+     */
+    public SignatureMatrix(int numberOfDocuments, int length) {
+        this.numberOfDocuments = numberOfDocuments;
+        this.length = length;
+        this.values = new int[Math.multiplyExact(numberOfDocuments, length)];
+        Arrays.fill(this.values, EMPTY);
+    }
+
+    /**
+     * get
+     *
+     * @param doc
+     * @param row
+     * @return value of the row in the signature of the document
+     */
+    public int get(int doc, int row) {
+        return this.values[offset(doc) + row];
+    }
+
+    /**
+     * set
+     *
+     * @param doc
+     * @param row
+     * @param value
+     */
+    public void set(int doc, int row, int value) {
+        this.values[offset(doc) + row] = value;
+    }
+
+    /**
+     * minimize
+     *
+     * Keeps, for every row of the document signature, the minimum between the current value and the new one
+     *
+     * @param doc
+     * @param rowValues a value for each row
+     */
+    public void minimize(int doc, int[] rowValues) {
+        int offset = offset(doc);
+        for (int row = 0; row < this.length; row++) {
+            if (rowValues[row] < this.values[offset + row]) {
+                this.values[offset + row] = rowValues[row];
+            }
+        }
+    }
+
+    /**
+     * agreements
+     *
+     * @param doc1
+     * @param doc2
+     * @return number of rows where the two signatures have the same value
+     */
+    public int agreements(int doc1, int doc2) {
+        return SignatureComparator.agreements(this.values, offset(doc1), this.values, offset(doc2), this.length);
+    }
+
+    /**
+     * similarity
+     *
+     * @param doc1
+     * @param doc2
+     * @return fraction of rows where the two signatures agree (estimate of the Jaccard similarity)
+     */
+    public float similarity(int doc1, int doc2) {
+        return (float) agreements(doc1, doc2) / (float) this.length;
+    }
+
+    /**
+     * offset
+     *
+     * @param doc
+     * @return position of the first row of the document signature in getValues()
+     */
+    public int offset(int doc) {
+        return (doc - 1) * this.length;
+    }
+
+    /**
+     * getValues
+     *
+     * @return the backing array (signature of document d starts at offset(d))
+     */
+    public int[] getValues() {
+        return this.values;
+    }
+
+    /**
+     * length
+     *
+     * @return number of rows of each signature
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * getNumberOfDocuments
+     *
+     * @return number of signatures
+     */
+    public int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+}
@@ -0,0 +1,30 @@
+package com.company;
+
+/**
+ * SignatureScheme
+ *
+ * The ways a MinHash signature can be computed by the MinHasher class.
+ */
+public enum SignatureScheme {
+
+    /**
+     * K_HASH: one independent hash function per row, each row keeps the minimum over all the shingles
+     */
+    K_HASH,
+
+    /**
+     * ONE_PERMUTATION: a single hash per shingle, the hash range is split in one bin per row and each row keeps
+     * the minimum of its bin; empty bins are filled by optimal densification (copy of a randomly probed non empty bin)
+     */
+    ONE_PERMUTATION;
+
+    /**
+     * fromArgument
+     *
+     * @param argument name of the scheme (e.g. "k_hash" or "one-permutation")
+     * @return the signature scheme
+     */
+    public static SignatureScheme fromArgument(String argument) {
+        return SignatureScheme.valueOf(argument.trim().replace('-', '_').toUpperCase());
+    }
+}
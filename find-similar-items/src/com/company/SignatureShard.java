@@ -0,0 +1,255 @@
+package com.company;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SignatureShard
+ *
+ * Signatures of a contiguous range of documents, computed by one worker on its slice of the corpus.
+ * The document ids are global (the position of the document in the whole corpus, starting from 1)
+ * and the hash functions only depend on the seed, so the shards of several workers can be merged
+ * in a single signature matrix and banded by one LSH. Each shard records the size of the corpus and the number
+ * of shards it was sliced in, so a merge missing a shard (or mixing the shards of two runs) is detected:
+ *
+ *   header     MAGIC, VERSION, corpusDocuments, shards, firstDoc, numberOfDocuments, length, scheme, seed
+ *   signatures numberOfDocuments * length ints, the signature of each document is contiguous
+ */
+public class SignatureShard {
+
+    /**
+     * MAGIC: "SIG1"
+     */
+    private static final int MAGIC = 0x53494731;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 40;
+
+    /**
+     * corpusDocuments: number of documents of the whole corpus
+     * shards: number of shards the corpus is sliced in
+     * firstDoc: global id of the first document of the shard, the others follow
+     * signatures: signature of each document of the shard (document firstDoc + d - 1 is d in the matrix)
+     */
+    private final int corpusDocuments;
+    private final int shards;
+    private final int firstDoc;
+    private final SignatureMatrix signatures;
+    private final SignatureScheme scheme;
+    private final long seed;
+
+    /**
+     * SignatureShard constructor
+     *
+     * @param corpusDocuments number of documents of the whole corpus
+     * @param shards number of shards the corpus is sliced in
+     * @param firstDoc global id of the first document of the matrix
+     * @param signatures
+     * @param scheme how the signatures have been computed
+     * @param seed seed of the hash functions of the signatures
+     */
+    public SignatureShard(int corpusDocuments, int shards, int firstDoc, SignatureMatrix signatures,
+                          SignatureScheme scheme, long seed) {
+        if (shards < 1 || firstDoc < 1 || firstDoc - 1 + (long) signatures.getNumberOfDocuments() > corpusDocuments) {
+            throw new IllegalArgumentException("Documents " + firstDoc + " to "
+                    + (firstDoc - 1 + signatures.getNumberOfDocuments()) + " are not in a corpus of " + corpusDocuments);
+        }
+        this.corpusDocuments = corpusDocuments;
+        this.shards = shards;
+        this.firstDoc = firstDoc;
+        this.signatures = signatures;
+        this.scheme = scheme;
+        this.seed = seed;
+    }
+
+    /**
+     * slice
+     *
+     * Splits the documents of the corpus in contiguous slices of (almost) the same size
+     *
+     * @param numberOfDocuments number of documents of the whole corpus
+     * @param shard index of the shard, from 0
+     * @param shards number of shards
+     * @return first (inclusive) and last (exclusive) position of the documents of the shard, from 0
+     */
+    public static int[] slice(int numberOfDocuments, int shard, int shards) {
+        if (shards < 1 || shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("No shard " + shard + " of " + shards);
+        }
+        return new int[]{
+                (int) ((long) numberOfDocuments * shard / shards),
+                (int) ((long) numberOfDocuments * (shard + 1) / shards)
+        };
+    }
+
+    /**
+     * write
+     *
+     * The file is written next to the destination and then renamed, so a shard is never seen half written
+     *
+     * @param file destination
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        int numberOfDocuments = this.signatures.getNumberOfDocuments();
+        int length = this.signatures.length();
+        long size = HEADER_SIZE + (long) numberOfDocuments * length * 4;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many documents for a single shard: " + numberOfDocuments);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putInt(this.corpusDocuments).putInt(this.shards)
+                .putInt(this.firstDoc).putInt(numberOfDocuments)
+                .putInt(length).putInt(this.scheme.ordinal()).putLong(this.seed);
+        buffer.asIntBuffer().put(this.signatures.getValues(), 0, numberOfDocuments * length);
+        buffer.position(buffer.capacity());
+        buffer.flip();
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+             FileChannel channel = output.getChannel()) {
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * read
+     *
+     * @param file
+     * @return the shard stored in the file
+     * @throws IOException if the file is not a complete shard
+     */
+    public static SignatureShard read(File file) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a signature shard: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the whole file
+            }
+            buffer.flip();
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a signature shard: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported signature shard version " + buffer.getInt(4) + ": " + file);
+        }
+        int corpusDocuments = buffer.getInt(8);
+        int shards = buffer.getInt(12);
+        int firstDoc = buffer.getInt(16);
+        int numberOfDocuments = buffer.getInt(20);
+        int length = buffer.getInt(24);
+        int ordinal = buffer.getInt(28);
+        long seed = buffer.getLong(32);
+        if (ordinal < 0 || ordinal >= SignatureScheme.values().length) {
+            throw new IOException("Unknown signature scheme " + ordinal + ": " + file);
+        }
+        if (shards < 1 || firstDoc < 1 || numberOfDocuments < 0 || length < 1
+                || firstDoc - 1 + (long) numberOfDocuments > corpusDocuments) {
+            throw new IOException("Corrupted signature shard header: " + file);
+        }
+        SignatureScheme scheme = SignatureScheme.values()[ordinal];
+        if (buffer.limit() != HEADER_SIZE + (long) numberOfDocuments * length * 4) {
+            throw new IOException("Truncated signature shard: " + file);
+        }
+
+        SignatureMatrix signatures = new SignatureMatrix(numberOfDocuments, length);
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().get(signatures.getValues());
+        return new SignatureShard(corpusDocuments, shards, firstDoc, signatures, scheme, seed);
+    }
+
+    /**
+     * merge
+     *
+     * Puts the signatures of the shards in a single matrix indexed by the global document ids.
+     * The shards must be all the shards of the same corpus: they cover the documents 1..N without gaps or overlaps,
+     * with the same length, scheme and seed.
+     *
+     * @param shards in any order
+     * @return signature matrix of the whole corpus
+     * @throws IllegalArgumentException if the shards cannot be merged
+     */
+    public static SignatureMatrix merge(List<SignatureShard> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shard to merge");
+        }
+        List<SignatureShard> sorted = new ArrayList<>(shards);
+        // an empty shard starts at the same document as the next one
+        sorted.sort((shard1, shard2) -> shard1.firstDoc != shard2.firstDoc
+                ? Integer.compare(shard1.firstDoc, shard2.firstDoc)
+                : Integer.compare(shard1.signatures.getNumberOfDocuments(), shard2.signatures.getNumberOfDocuments()));
+
+        SignatureShard first = sorted.get(0);
+        if (sorted.size() != first.shards) {
+            throw new IllegalArgumentException(sorted.size() + " shards to merge instead of " + first.shards);
+        }
+        int length = first.signatures.length();
+        int numberOfDocuments = 0;
+        for (SignatureShard shard : sorted) {
+            if (shard.signatures.length() != length || shard.scheme != first.scheme || shard.seed != first.seed
+                    || shard.corpusDocuments != first.corpusDocuments || shard.shards != first.shards) {
+                throw new IllegalArgumentException("Shard computed with different settings: first document " + shard.firstDoc);
+            }
+            if (shard.firstDoc != numberOfDocuments + 1) {
+                throw new IllegalArgumentException("Shard starting at document " + shard.firstDoc
+                        + " instead of " + (numberOfDocuments + 1));
+            }
+            numberOfDocuments += shard.signatures.getNumberOfDocuments();
+        }
+        if (numberOfDocuments != first.corpusDocuments) {
+            throw new IllegalArgumentException("The shards cover " + numberOfDocuments + " documents of "
+                    + first.corpusDocuments);
+        }
+
+        SignatureMatrix merged = new SignatureMatrix(numberOfDocuments, length);
+        for (SignatureShard shard : sorted) {
+            int[] values = shard.signatures.getValues();
+            System.arraycopy(values, 0, merged.getValues(), merged.offset(shard.firstDoc),
+                    shard.signatures.getNumberOfDocuments() * length);
+        }
+        return merged;
+    }
+
+    public int getCorpusDocuments() {
+        return this.corpusDocuments;
+    }
+
+    public int getShards() {
+        return this.shards;
+    }
+
+    public int getFirstDoc() {
+        return this.firstDoc;
+    }
+
+    public SignatureMatrix getSignatures() {
+        return this.signatures;
+    }
+
+    public SignatureScheme getScheme() {
+        return this.scheme;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+}
@@ -0,0 +1,127 @@
+package com.company;
+
+/**
+ * SimHash
+ *
+ * Random hyperplane fingerprints (Charikar, 2002) of the term frequency vectors of the documents:
+ * every shingle votes on every bit of the fingerprint with its frequency, +count if its hash has the bit set
+ * and -count otherwise, and the bit is kept if the votes are positive.
+ * The fraction of bits two fingerprints differ on estimates the angle between the two vectors divided by pi,
+ * so near duplicates for the cosine similarity have a small Hamming distance (see HammingIndex).
+ */
+public class SimHash {
+
+    /**
+     * bits: length of the fingerprints (64 or 128)
+     * seeds: seed of the hash of the shingles, one per 64 bits of fingerprint
+     * seed: seed the other seeds are derived from
+     */
+    private final int bits;
+    private final long[] seeds;
+    private final long seed;
+
+    /**
+     * SimHash constructor
+     *
+     * @param bits length of the fingerprints: 64 or 128
+     * @param seed
+     */
+    public SimHash(int bits, long seed) {
+        if (bits != 64 && bits != 128) {
+            throw new IllegalArgumentException("bits must be 64 or 128: " + bits);
+        }
+        this.bits = bits;
+        this.seed = seed;
+        this.seeds = new long[bits / 64];
+        long state = seed;
+        for (int word = 0; word < this.seeds.length; word++) {
+            state += HashFamily.GOLDEN_GAMMA;
+            this.seeds[word] = HashFamily.splitMix64(state);
+        }
+    }
+
+    /**
+     * fingerprint
+     *
+     * @param shingles distinct shingle ids of the document
+     * @param counts frequency of each shingle
+     * @return fingerprint of the document, bits / 64 longs
+     */
+    public long[] fingerprint(long[] shingles, int[] counts) {
+        long[] votes = new long[this.bits];
+        for (int i = 0; i < shingles.length; i++) {
+            int count = counts[i];
+            for (int word = 0; word < this.seeds.length; word++) {
+                long hash = RollingShingleHasher.mix(shingles[i] ^ this.seeds[word]);
+                int first = word * 64;
+                for (int bit = 0; bit < 64; bit++) {
+                    votes[first + bit] += ((hash >>> bit) & 1) == 1 ? count : -count;
+                }
+            }
+        }
+
+        long[] fingerprint = new long[this.seeds.length];
+        for (int bit = 0; bit < this.bits; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint[bit >>> 6] |= 1L << (bit & 63);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * fingerprint
+     *
+     * @param histogram shingles of the document with their frequency
+     * @return fingerprint of the document
+     */
+    public long[] fingerprint(ShingleHistogram histogram) {
+        return fingerprint(histogram.getShingles(), histogram.getCounts());
+    }
+
+    /**
+     * hammingDistance
+     *
+     * @param fingerprint1
+     * @param fingerprint2
+     * @return number of bits the two fingerprints differ on
+     */
+    public static int hammingDistance(long[] fingerprint1, long[] fingerprint2) {
+        int distance = 0;
+        for (int word = 0; word < fingerprint1.length; word++) {
+            distance += Long.bitCount(fingerprint1[word] ^ fingerprint2[word]);
+        }
+        return distance;
+    }
+
+    /**
+     * cosine
+     *
+     * @param distance Hamming distance of two fingerprints
+     * @param bits length of the fingerprints
+     * @return cosine similarity of the two documents estimated from the distance: cos(pi * distance / bits)
+     */
+    public static float cosine(int distance, int bits) {
+        return (float) Math.cos(Math.PI * distance / bits);
+    }
+
+    /**
+     * maxDistance
+     *
+     * @param cosine minimum cosine similarity
+     * @param bits length of the fingerprints
+     * @return largest Hamming distance whose estimated cosine similarity is at least the given one
+     */
+    public static int maxDistance(double cosine, int bits) {
+        double angle = Math.acos(Math.max(-1, Math.min(1, cosine)));
+        return (int) Math.floor(angle / Math.PI * bits + 1e-9);
+    }
+
+    public int getBits() {
+        return this.bits;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+}
@@ -0,0 +1,333 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SimilarityJoin
+ *
+ * Exact all-pairs similarity join: finds every pair of documents whose Jaccard similarity is at least the threshold,
+ * without comparing all the pairs (PPJoin, Xiao et al., Efficient similarity joins for near duplicate detection, 2008).
+ *
+ * The shingles are renumbered from the rarest to the most frequent and the documents sorted by size, then:
+ *  - prefix filtering: two similar documents share one of the first shingles of their sets,
+ *    so only these prefixes are indexed and probed,
+ *  - length filtering: a document cannot be similar to a much smaller one,
+ *  - positional filtering: the position of the shared shingle in the two prefixes bounds the overlap left.
+ * The candidates left are verified with a merge that stops as soon as the threshold cannot be reached.
+ * The index is built once, then each document probes it on its own, so the documents are probed in parallel.
+ */
+public class SimilarityJoin {
+
+    /**
+     * EPSILON: tolerance of the bounds computed with doubles (a bound is never rounded above the exact one)
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * threshold: minimum Jaccard similarity of the pairs
+     */
+    private final double threshold;
+
+    /**
+     * tokens: shingles of each document in order of processing, renumbered by frequency and sorted
+     * docs: document id of each position in order of processing (the documents sorted by size)
+     */
+    private final int[][] tokens;
+    private final int[] docs;
+
+    /**
+     * postingStarts: the postings of token t are between postingStarts[t] and postingStarts[t + 1]
+     * postingDocs, postingPositions: the documents (in order of processing) having the token in their indexing prefix,
+     * and the position of the token in their set
+     */
+    private final int[] postingStarts, postingDocs, postingPositions;
+
+    /**
+     * overlaps: per thread, the overlap accumulated with each candidate of the document being probed
+     */
+    private final ThreadLocal<Candidates> candidates;
+
+    /**
+     * SimilarityJoin constructor
+     *
+     * Renumbers the shingles and builds the index of the prefixes
+     *
+     * @param documentShingles sorted shingle set of each document (the one of document d is at d - 1)
+     * @param threshold minimum Jaccard similarity, in (0, 1]
+     */
+    public SimilarityJoin(List<long[]> documentShingles, double threshold) {
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("The threshold must be in (0, 1]: " + threshold);
+        }
+        this.threshold = threshold;
+
+        int numberOfDocuments = documentShingles.size();
+        int[][] renumbered = renumber(documentShingles);
+
+        // documents sorted by size, the empty ones are never similar to anything and are left out
+        long[] bySize = new long[numberOfDocuments];
+        int nonEmpty = 0;
+        for (int doc = 1; doc <= numberOfDocuments; doc++) {
+            if (renumbered[doc - 1].length > 0) {
+                bySize[nonEmpty++] = ((long) renumbered[doc - 1].length << 32) | doc;
+            }
+        }
+        bySize = Arrays.copyOf(bySize, nonEmpty);
+        Arrays.sort(bySize);
+        this.docs = new int[nonEmpty];
+        this.tokens = new int[nonEmpty][];
+        for (int i = 0; i < nonEmpty; i++) {
+            this.docs[i] = (int) bySize[i];
+            this.tokens[i] = renumbered[this.docs[i] - 1];
+        }
+
+        // inverted index of the indexing prefixes, each posting list sorted by order of processing
+        int numberOfTokens = 0;
+        for (int[] set : this.tokens) {
+            numberOfTokens = Math.max(numberOfTokens, set[set.length - 1] + 1);
+        }
+        this.postingStarts = new int[numberOfTokens + 1];
+        for (int[] set : this.tokens) {
+            for (int i = 0; i < indexPrefixLength(set.length); i++) {
+                this.postingStarts[set[i] + 1]++;
+            }
+        }
+        for (int token = 0; token < numberOfTokens; token++) {
+            this.postingStarts[token + 1] += this.postingStarts[token];
+        }
+        this.postingDocs = new int[this.postingStarts[numberOfTokens]];
+        this.postingPositions = new int[this.postingDocs.length];
+        int[] filled = Arrays.copyOf(this.postingStarts, numberOfTokens);
+        for (int x = 0; x < this.tokens.length; x++) {
+            int[] set = this.tokens[x];
+            for (int i = 0; i < indexPrefixLength(set.length); i++) {
+                int posting = filled[set[i]]++;
+                this.postingDocs[posting] = x;
+                this.postingPositions[posting] = i;
+            }
+        }
+
+        this.candidates = ThreadLocal.withInitial(() -> new Candidates(this.tokens.length));
+    }
+
+    /**
+     * join
+     *
+     * @param parallel whether the documents are probed by several threads
+     * @param consumer receives every pair at least as similar as the threshold (called by several threads if parallel)
+     */
+    public void join(boolean parallel, PairConsumer consumer) {
+        DocumentTasks.forEachDocument(this.tokens.length, parallel, x -> probe(x - 1, consumer));
+    }
+
+    /**
+     * join
+     *
+     * @param parallel whether the documents are probed by several threads
+     * @return every pair at least as similar as the threshold (see DocumentPairs)
+     */
+    public LongHashSet join(boolean parallel) {
+        LongHashSet pairs = new LongHashSet();
+        join(parallel, (doc1, doc2, similarity) -> {
+            synchronized (pairs) {
+                pairs.add(DocumentPairs.encode(doc1, doc2));
+            }
+        });
+        return pairs;
+    }
+
+    /**
+     * recall
+     *
+     * @param exactPairs the pairs found by the join
+     * @param candidatePairs the pairs found by an approximate method (e.g. LSH.findCandidates)
+     * @return fraction of the exact pairs that are candidates (1 if there are no exact pairs)
+     */
+    public static double recall(LongHashSet exactPairs, LongHashSet candidatePairs) {
+        if (exactPairs.size() == 0) {
+            return 1;
+        }
+        int found = 0;
+        for (long pair : exactPairs.toArray()) {
+            if (candidatePairs.contains(pair)) {
+                found++;
+            }
+        }
+        return (double) found / exactPairs.size();
+    }
+
+    public double getThreshold() {
+        return this.threshold;
+    }
+
+    // find the documents processed before x that are similar to it
+    private void probe(int x, PairConsumer consumer) {
+        int[] set = this.tokens[x];
+        int size = set.length;
+        int minSize = (int) Math.ceil(this.threshold * size - EPSILON);
+        Candidates candidates = this.candidates.get();
+
+        for (int i = 0; i < probePrefixLength(size); i++) {
+            int token = set[i];
+            for (int posting = this.postingStarts[token]; posting < this.postingStarts[token + 1]; posting++) {
+                int y = this.postingDocs[posting];
+                if (y >= x) {
+                    // the postings are sorted, the next ones are processed after x
+                    break;
+                }
+                int sizeY = this.tokens[y].length;
+                if (sizeY < minSize || candidates.overlaps[y] < 0) {
+                    continue;
+                }
+                int j = this.postingPositions[posting];
+                int upperBound = 1 + Math.min(size - i - 1, sizeY - j - 1);
+                if (candidates.overlaps[y] + upperBound >= minOverlap(size, sizeY)) {
+                    candidates.add(y);
+                } else {
+                    candidates.prune(y);
+                }
+            }
+        }
+
+        for (int c = 0; c < candidates.size; c++) {
+            int y = candidates.docs[c];
+            if (candidates.overlaps[y] > 0) {
+                int overlap = overlap(set, this.tokens[y], minOverlap(size, this.tokens[y].length));
+                double similarity = (double) overlap / (size + this.tokens[y].length - overlap);
+                if (overlap >= 0 && similarity >= this.threshold) {
+                    int doc1 = this.docs[x], doc2 = this.docs[y];
+                    consumer.accept(Math.min(doc1, doc2), Math.max(doc1, doc2), (float) similarity);
+                }
+            }
+        }
+        candidates.clear();
+    }
+
+    // size of the intersection of the two sets, or -1 as soon as it cannot reach minOverlap
+    private static int overlap(int[] set1, int[] set2, int minOverlap) {
+        int overlap = 0;
+        int i = 0, j = 0;
+        while (i < set1.length && j < set2.length) {
+            if (overlap + Math.min(set1.length - i, set2.length - j) < minOverlap) {
+                return -1;
+            }
+            if (set1[i] < set2[j]) {
+                i++;
+            } else if (set1[i] > set2[j]) {
+                j++;
+            } else {
+                overlap++;
+                i++;
+                j++;
+            }
+        }
+        return overlap >= minOverlap ? overlap : -1;
+    }
+
+    // shingles in common needed for two sets of these sizes to reach the threshold
+    private int minOverlap(int size1, int size2) {
+        return (int) Math.ceil(this.threshold / (1 + this.threshold) * (size1 + size2) - EPSILON);
+    }
+
+    // shingles of a set that are probed: a similar set processed before shares at least one of them
+    private int probePrefixLength(int size) {
+        return size - (int) Math.ceil(this.threshold * size - EPSILON) + 1;
+    }
+
+    // shingles of a set that are indexed: a similar set processed after probes at least one of them
+    private int indexPrefixLength(int size) {
+        return Math.min(size, size - (int) Math.ceil(2 * this.threshold / (1 + this.threshold) * size - EPSILON) + 1);
+    }
+
+    // renumber the shingles from the rarest to the most frequent, each set sorted by the new numbers
+    private static int[][] renumber(List<long[]> documentShingles) {
+        int total = 0;
+        for (long[] set : documentShingles) {
+            total = Math.addExact(total, set.length);
+        }
+        long[] all = new long[total];
+        int filled = 0;
+        for (long[] set : documentShingles) {
+            System.arraycopy(set, 0, all, filled, set.length);
+            filled += set.length;
+        }
+        Arrays.sort(all);
+
+        // distinct shingles (sorted) and number of documents having each one
+        int distinct = 0;
+        int[] frequencies = new int[total];
+        for (int i = 0; i < total; i++) {
+            if (i > 0 && all[i] == all[distinct - 1]) {
+                frequencies[distinct - 1]++;
+            } else {
+                all[distinct] = all[i];
+                frequencies[distinct++] = 1;
+            }
+        }
+
+        // rank of each distinct shingle by frequency (ties by shingle id)
+        long[] byFrequency = new long[distinct];
+        for (int i = 0; i < distinct; i++) {
+            byFrequency[i] = ((long) frequencies[i] << 32) | i;
+        }
+        Arrays.sort(byFrequency);
+        int[] ranks = new int[distinct];
+        for (int rank = 0; rank < distinct; rank++) {
+            ranks[(int) byFrequency[rank]] = rank;
+        }
+
+        int[][] renumbered = new int[documentShingles.size()][];
+        for (int doc = 0; doc < renumbered.length; doc++) {
+            long[] set = documentShingles.get(doc);
+            int[] tokens = new int[set.length];
+            for (int i = 0; i < set.length; i++) {
+                tokens[i] = ranks[Arrays.binarySearch(all, 0, distinct, set[i])];
+            }
+            Arrays.sort(tokens);
+            renumbered[doc] = tokens;
+        }
+        return renumbered;
+    }
+
+    /**
+     * Candidates
+     *
+     * Overlaps accumulated while probing a document, reset after each document
+     */
+    private static class Candidates {
+
+        /**
+         * overlaps: overlap found in the prefixes with each document, -1 if it was pruned
+         * docs: the documents with a non zero overlap
+         */
+        final int[] overlaps;
+        final int[] docs;
+        int size;
+
+        Candidates(int numberOfDocuments) {
+            this.overlaps = new int[numberOfDocuments];
+            this.docs = new int[numberOfDocuments];
+        }
+
+        void add(int doc) {
+            if (this.overlaps[doc]++ == 0) {
+                this.docs[this.size++] = doc;
+            }
+        }
+
+        void prune(int doc) {
+            if (this.overlaps[doc] == 0) {
+                this.docs[this.size++] = doc;
+            }
+            this.overlaps[doc] = -1;
+        }
+
+        void clear() {
+            for (int i = 0; i < this.size; i++) {
+                this.overlaps[this.docs[i]] = 0;
+            }
+            this.size = 0;
+        }
+    }
+}
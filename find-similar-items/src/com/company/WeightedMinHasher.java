@@ -0,0 +1,138 @@
+package com.company;
+
+import java.util.List;
+
+/**
+ * WeightedMinHasher
+ *
+ * Weighted MinHash with Improved Consistent Weighted Sampling (Ioffe, 2010): each row samples a shingle
+ * with probability proportional to its weight (here its frequency in the document), and the probability that
+ * two documents sample the same (shingle, level) in a row is their weighted Jaccard similarity,
+ * sum(min(count1, count2)) / sum(max(count1, count2)).
+ *
+ * The sample of a row is hashed to an int, so the signatures are stored in a SignatureMatrix
+ * and banded by the LSH like the MinHash ones. The signature of a document is computed in a single pass
+ * over its shingle histogram.
+ */
+public class WeightedMinHasher {
+
+    /**
+     * UNIT: 2^-53, to turn 53 random bits into a double in (0, 1)
+     */
+    private static final double UNIT = 0x1.0p-53;
+
+    /**
+     * length: number of rows of the signature
+     * seed: seed of the random variables
+     * rowSeeds: seed of each row
+     */
+    private final int length;
+    private final long seed;
+    private final long[] rowSeeds;
+
+    /**
+     * WeightedMinHasher constructor
+     *
+     * @param length number of rows of the signature
+     * @param seed
+     */
+    public WeightedMinHasher(int length, long seed) {
+        this.length = length;
+        this.seed = seed;
+        this.rowSeeds = new long[length];
+        long state = seed;
+        for (int row = 0; row < length; row++) {
+            state += HashFamily.GOLDEN_GAMMA;
+            this.rowSeeds[row] = HashFamily.splitMix64(state);
+        }
+    }
+
+    /**
+     * signature
+     *
+     * Writes the weighted signature of the histogram in values, starting from offset
+     * (SignatureMatrix.EMPTY in every row if the document has no shingle)
+     *
+     * @param shingles distinct shingle ids of the document
+     * @param counts frequency of each shingle (the shingles with count 0 are ignored)
+     * @param values
+     * @param offset
+     */
+    public void signature(long[] shingles, int[] counts, int[] values, int offset) {
+        double[] best = new double[this.length];
+        for (int row = 0; row < this.length; row++) {
+            best[row] = Double.POSITIVE_INFINITY;
+            values[offset + row] = SignatureMatrix.EMPTY;
+        }
+
+        for (int i = 0; i < shingles.length; i++) {
+            if (counts[i] <= 0) {
+                continue;
+            }
+            double logWeight = Math.log(counts[i]);
+            long shingle = RollingShingleHasher.mix(shingles[i]);
+            for (int row = 0; row < this.length; row++) {
+                // r, c ~ Gamma(2, 1) and beta ~ Uniform(0, 1), the same for a shingle in every document
+                long state = this.rowSeeds[row] ^ shingle;
+                double r = -Math.log(uniform(state += HashFamily.GOLDEN_GAMMA) * uniform(state += HashFamily.GOLDEN_GAMMA));
+                double c = -Math.log(uniform(state += HashFamily.GOLDEN_GAMMA) * uniform(state += HashFamily.GOLDEN_GAMMA));
+                double beta = uniform(state + HashFamily.GOLDEN_GAMMA);
+
+                // level t of the shingle, and ln(a) = ln(c) - r (t - beta + 1) to compare the shingles
+                double t = Math.floor(logWeight / r + beta);
+                double logA = Math.log(c) - r * (t - beta + 1);
+                if (logA < best[row]) {
+                    best[row] = logA;
+                    values[offset + row] = sample(shingles[i], (long) t, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * signature
+     *
+     * @param histogram shingles of the document with their frequency
+     * @return weighted signature of the document
+     */
+    public int[] signature(ShingleHistogram histogram) {
+        int[] signature = new int[this.length];
+        signature(histogram.getShingles(), histogram.getCounts(), signature, 0);
+        return signature;
+    }
+
+    /**
+     * signatures
+     *
+     * @param documentShingles distinct shingle ids of each document (the first element is document 1)
+     * @param documentCounts frequency of each shingle of each document
+     * @param parallel true to split the documents among the threads of the common fork/join pool
+     * @return matrix of weighted signatures
+     */
+    public SignatureMatrix signatures(List<long[]> documentShingles, List<int[]> documentCounts, boolean parallel) {
+        SignatureMatrix matrix = new SignatureMatrix(documentShingles.size(), this.length);
+
+        DocumentTasks.forEachDocument(documentShingles.size(), parallel, doc -> signature(documentShingles.get(doc - 1),
+                documentCounts.get(doc - 1), matrix.getValues(), matrix.offset(doc)));
+        return matrix;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    // uniform double in (0, 1) for a state
+    private static double uniform(long state) {
+        return ((HashFamily.splitMix64(state) >>> 11) + 0.5) * UNIT;
+    }
+
+    // 31-bit value of the sample (shingle, level) of a row
+    private static int sample(long shingle, long level, int row) {
+        long h = RollingShingleHasher.mix(shingle ^ RollingShingleHasher.mix(level * HashFamily.GOLDEN_GAMMA + row));
+        return (int) (h >>> (64 - HashFamily.HASH_BITS));
+    }
+}
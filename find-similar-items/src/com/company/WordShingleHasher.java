@@ -0,0 +1,149 @@
+package com.company;
+
+import java.util.function.LongConsumer;
+
+/**
+ * WordShingleHasher
+ *
+ * Hasher for word shingles that never builds strings: each word is hashed once while it is scanned
+ * (64-bit FNV-1a, then mixed) and the hashes of the last k words are kept in a ring buffer.
+ * The shingle id is a polynomial of the k word hashes, updated in O(1) per word:
+ *
+ *   s(i+1) = s(i) * BASE + w(i+k) - w(i) * BASE^k   (mod 2^64)
+ *
+ * The words are the ones the WORD mode takes from BreakIterator.getWordInstance (the words starting with a letter
+ * or a digit): runs of letters, digits and combining marks, where a single ' " . _ or dash between two letters
+ * (don't, U.S.A, e-mail) and a single ' " , or . between two digits (3.14, 1,000) do not end the word,
+ * a % or &amp; after a number is part of it (5%) and a run of ideographs is a word of its own.
+ * A number right after a dot, a # or a currency symbol (.5, $5) is skipped, as the WORD mode does.
+ * The known differences are the scripts BreakIterator splits with a dictionary (e.g. Thai), which are split
+ * here at the characters that are not letters or digits, and the combining marks after an ideograph.
+ *
+ * Since words are combined by their hashes and not concatenated, "ab c" and "a bc" are different shingles.
+ */
+public class WordShingleHasher {
+
+    /**
+     * BASE: odd multiplier of the polynomial
+     */
+    private static final long BASE = 0x9e3779b97f4a7c15L;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /**
+     * k: the size of the shingles in words
+     * outFactor: BASE^k, used to remove the word that leaves the window
+     */
+    private final int k;
+    private final long outFactor;
+
+    /**
+     * WordShingleHasher constructor
+     *
+     * @param k
+     */
+    public WordShingleHasher(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+
+        long factor = 1;
+        for (int i = 0; i < k; i++) {
+            factor *= BASE;
+        }
+        this.outFactor = factor;
+    }
+
+    /**
+     * hash
+     *
+     * Gives to the consumer the id of every k-word shingle of the text
+     *
+     * @param text
+     * @param consumer
+     * @return number of words in the text
+     */
+    public int hash(CharSequence text, LongConsumer consumer) {
+        long[] ring = new long[this.k];
+        long window = 0;
+        int words = 0;
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // skip what is not part of a word
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            // a number right after a dot, a # or a currency symbol is a ".5" or "$5" word for BreakIterator,
+            // which the WORD mode drops
+            boolean dropped = i > 0 && Character.isDigit(text.charAt(i)) && (text.charAt(i - 1) == '.'
+                    || text.charAt(i - 1) == '#' || Character.getType(text.charAt(i - 1)) == Character.CURRENCY_SYMBOL);
+
+            // hash the word while it is scanned
+            // (last: the last letter or digit of the word, the marks following it are skipped)
+            char last = text.charAt(i++);
+            long word = (FNV_OFFSET ^ last) * FNV_PRIME;
+            // a run of ideographs is a word, apart from the letters next to it
+            boolean ideographs = Character.isIdeographic(last);
+            while (i < length) {
+                char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c) && Character.isIdeographic(c) == ideographs) {
+                    last = c;
+                } else if (!isMark(c) && (i + 1 == length || !isMidWord(last, c, text.charAt(i + 1)))) {
+                    break;
+                }
+                word = (word ^ c) * FNV_PRIME;
+                i++;
+            }
+            // and a % or & after a number is part of it
+            if (i < length && Character.isDigit(last) && (text.charAt(i) == '%' || text.charAt(i) == '&')) {
+                word = (word ^ text.charAt(i)) * FNV_PRIME;
+                i++;
+            }
+            if (dropped) {
+                continue;
+            }
+            word = RollingShingleHasher.mix(word);
+
+            // slide the window of k words
+            int position = words % this.k;
+            window = window * BASE + word;
+            if (words >= this.k) {
+                window -= ring[position] * this.outFactor;
+            }
+            ring[position] = word;
+            words++;
+
+            if (words >= this.k) {
+                consumer.accept(RollingShingleHasher.mix(window));
+            }
+        }
+        return words;
+    }
+
+    // accents and other combining marks are part of the word
+    private static boolean isMark(char c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK;
+    }
+
+    // true if c between the two characters does not end the word (as for BreakIterator)
+    private static boolean isMidWord(char before, char c, char after) {
+        if (Character.isLetter(before) && Character.isLetter(after)
+                && !Character.isIdeographic(before) && !Character.isIdeographic(after)) {
+            return c == '\'' || c == '"' || c == '-' || c == '.' || c == '_'
+                    || c == '\u2010' || c == '\u2013' || c == '\u2014';
+        }
+        if (Character.isDigit(before) && Character.isDigit(after)) {
+            return c == '\'' || c == '"' || c == ',' || c == '.';
+        }
+        return false;
+    }
+}
@@ -0,0 +1,1136 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks
+ *
+ * Invariants the optimisations of the pipeline rely on, checked on small random corpora:
+ * a faster path must give the same result as the plain one it replaces.
+ * There is no test framework in the project, so the checks are run as a main class:
+ *
+ *   java -cp <classes> com.company.Checks
+ *
+ * A failed check throws an AssertionError, the run ends with "ALL CHECKS PASSED" otherwise.
+ */
+public class Checks {
+
+    /**
+     * SEED: seed of the random corpora (and of the hash functions), so a failure can be replayed
+     */
+    private static final long SEED = 7;
+
+    /**
+     * JOIN_THRESHOLDS: thresholds of the checks of the exact similarities, each one reached exactly by some pairs
+     */
+    private static final double[] JOIN_THRESHOLDS = {1 / 3.0, 0.5, 0.6, 0.7, 0.75, 0.8, 0.9, 1};
+
+    public static void main(String[] args) throws Exception {
+        externalSignatures();
+        manyRuns();
+        inclusiveThreshold();
+        documentReader();
+        orderedIngestion();
+        wordBoundaries();
+        hammingIndex();
+        multiProbeRecall();
+        weightedEstimate();
+        bBitEstimate();
+        shardMerge();
+        bandKeys();
+        metricsJson();
+        heapPeak();
+        parallelSignatures();
+        similarityJoin();
+        candidateVerifier();
+        documentClusters();
+        kmvEstimates();
+        persistentIndex();
+        System.out.println("ALL CHECKS PASSED");
+    }
+
+    /**
+     * externalSignatures
+     *
+     * The shingle-major signatures of the external index (MinHasher.minimize + completeSignatures, with spilled runs)
+     * are the same as the document-major ones of MinHasher.signature, for both schemes (densification included)
+     */
+    private static void externalSignatures() throws IOException {
+        Random random = new Random(SEED);
+        List<long[]> documents = randomShingleSets(random, 300, 2000, 60);
+        // a document too small to fill the bins and an empty one
+        documents.add(new long[]{5});
+        documents.add(new long[0]);
+
+        File folder = Files.createTempDirectory("checks-").toFile();
+        try {
+            for (SignatureScheme scheme : SignatureScheme.values()) {
+                MinHasher minHasher = new MinHasher(64, SEED, scheme);
+                SignatureMatrix expected = minHasher.signatures(documents, false);
+                // a buffer of 500 pairs, so most of the pairs go through the runs on disk
+                try (ExternalShingleIndex index = new ExternalShingleIndex(folder, 500 * 12)) {
+                    for (long[] document : documents) {
+                        index.addShingleSet(document);
+                    }
+                    check(index.getNumberOfRuns() > 1, "the external index has not spilled");
+                    SignatureMatrix actual = index.signatures(minHasher);
+                    check(Arrays.equals(expected.getValues(), actual.getValues()),
+                            "external signatures differ from the in-memory ones with " + scheme);
+                }
+            }
+        } finally {
+            folder.delete();
+        }
+        System.out.println("OK external signatures");
+    }
+
+    /**
+     * manyRuns
+     *
+     * With a budget of 40 pairs the external index spills hundreds of runs, merged in several passes
+     * of at most 64 runs: the signatures are still the ones of MinHasher.signature, for both schemes
+     */
+    private static void manyRuns() throws IOException {
+        List<long[]> documents = randomShingleSets(new Random(SEED), 400, 5000, 60);
+        File folder = Files.createTempDirectory("checks-").toFile();
+        try {
+            for (SignatureScheme scheme : SignatureScheme.values()) {
+                MinHasher minHasher = new MinHasher(64, SEED, scheme);
+                try (ExternalShingleIndex index = new ExternalShingleIndex(folder, 40 * 12)) {
+                    for (long[] document : documents) {
+                        index.addShingleSet(document);
+                    }
+                    check(index.getNumberOfRuns() > 200, "only " + index.getNumberOfRuns() + " runs spilled");
+                    check(Arrays.equals(minHasher.signatures(documents, false).getValues(),
+                            index.signatures(minHasher).getValues()),
+                            "external signatures from merged runs differ from the in-memory ones with " + scheme);
+                    check(index.getNumberOfRuns() < 64, index.getNumberOfRuns() + " runs left for the final merge");
+                }
+                File[] left = folder.listFiles();
+                check(left != null && left.length == 0, "run files left after close");
+            }
+        } finally {
+            folder.delete();
+        }
+        System.out.println("OK external signatures from many runs");
+    }
+
+    /**
+     * inclusiveThreshold
+     *
+     * A document whose estimated similarity is exactly the threshold is returned by the queries of the online index
+     * (e.g. 70 rows out of 100 at 0.7, where 70 / 100f rounds below 0.7), and one row less is not
+     */
+    private static void inclusiveThreshold() {
+        Random random = new Random(SEED);
+        for (int length : new int[]{100, 60, 128}) {
+            OnlineLshIndex index = new OnlineLshIndex(new Shingling(9, ShinglingMode.ROLLING_CHARACTER),
+                    new MinHasher(length, SEED, SignatureScheme.K_HASH), new LshParameters(length / 5, 5));
+            int[] query = new int[length];
+            for (int row = 0; row < length; row++) {
+                query[row] = random.nextInt(Integer.MAX_VALUE - 1);
+            }
+            // document a agrees with the query on its first a rows, so it shares the first band
+            for (int agreements = 5; agreements <= length; agreements++) {
+                int[] signature = query.clone();
+                for (int row = agreements; row < length; row++) {
+                    signature[row]++;
+                }
+                check(index.add(signature) == agreements - 4, "unexpected document id");
+            }
+            for (int agreements = 5; agreements <= length; agreements++) {
+                double similarity = agreements / (double) length;
+                check(contains(index.query(query, similarity), agreements - 4),
+                        agreements + " rows out of " + length + " not found at " + similarity);
+                if (agreements > 5) {
+                    check(!contains(index.query(query, similarity), agreements - 5),
+                            (agreements - 1) + " rows out of " + length + " found at " + similarity);
+                }
+            }
+        }
+        System.out.println("OK inclusive threshold");
+    }
+
+    /**
+     * documentReader
+     *
+     * DocumentReader builds the same text as the line by line reader of Main it replaced
+     * (see oldRead), including runs of white spaces and multi-byte characters across its 1 MB buffers
+     * (the context dependent lower case mappings, see DocumentReader, are left out)
+     */
+    private static void documentReader() throws IOException {
+        Random random = new Random(SEED);
+        String[] pieces = {"a", "B", "word", " ", "  ", "\t", " \t ", "\n", "\r\n", "\r", "’", "é", "Ä", "€", "😀", "3.14"};
+        File folder = Files.createTempDirectory("checks-").toFile();
+        try {
+            for (int size : new int[]{0, 1, 100, 10000, 3 << 20}) {
+                StringBuilder text = new StringBuilder();
+                while (text.length() < size) {
+                    text.append(pieces[random.nextInt(pieces.length)]);
+                }
+                File file = new File(folder, "document-" + size + ".txt");
+                Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+                check(oldRead(file).equals(DocumentReader.read(file)), "DocumentReader differs on a text of " + size + " chars");
+                check(oldRead(file).equals(DocumentReader.normalize(text)), "normalize differs on a text of " + size + " chars");
+                file.delete();
+            }
+        } finally {
+            folder.delete();
+        }
+        System.out.println("OK document reader");
+    }
+
+    // the reader of Main before DocumentReader (in UTF-8 instead of the platform charset)
+    private static String oldRead(File file) throws IOException {
+        StringBuilder document = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                document.append(line
+                        .replaceAll("\\s{2,}", " ")
+                        .replace("’", "")
+                        .toLowerCase());
+            }
+        }
+        return document.toString();
+    }
+
+    /**
+     * orderedIngestion
+     *
+     * The parallel ingestion gives the same documents and ids as a sequential one, a file that cannot be read
+     * is skipped (and reported on the standard error) and the next files take its id
+     */
+    private static void orderedIngestion() throws IOException {
+        Random random = new Random(SEED);
+        File folder = Files.createTempDirectory("checks-").toFile();
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                File file = new File(folder, String.format("document-%02d.txt", i));
+                if (i == 17) {
+                    // a folder cannot be read as a file
+                    file.mkdir();
+                } else {
+                    StringBuilder text = new StringBuilder();
+                    for (int j = random.nextInt(5000); j >= 0; j--) {
+                        text.append((char) ('a' + random.nextInt(6)));
+                    }
+                    Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                files.add(file);
+            }
+
+            Shingling sequential = new Shingling(5, ShinglingMode.ROLLING_CHARACTER);
+            for (File file : files) {
+                if (file.isFile()) {
+                    sequential.shingleADocument(DocumentReader.read(file));
+                }
+            }
+            Shingling parallel = new Shingling(5, ShinglingMode.ROLLING_CHARACTER);
+            int[] docs;
+            // few files in flight, so that the workers wait for the ingestion
+            try (IngestionPipeline pipeline = new IngestionPipeline(parallel, 4, 3)) {
+                docs = pipeline.ingest(files);
+            }
+
+            check(parallel.getNumberOfDocuments() == files.size() - 1, "the unreadable file has not been skipped");
+            for (int i = 0; i < files.size(); i++) {
+                int expected = i < 17 ? i + 1 : i == 17 ? 0 : i;
+                check(docs[i] == expected, "file " + i + " is document " + docs[i] + " instead of " + expected);
+            }
+            for (int doc = 1; doc <= sequential.getNumberOfDocuments(); doc++) {
+                check(Arrays.equals(sequential.getDocumentShingles(doc), parallel.getDocumentShingles(doc)),
+                        "document " + doc + " differs from the sequential ingestion");
+            }
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+            folder.delete();
+        }
+        System.out.println("OK ordered ingestion");
+    }
+
+    /**
+     * wordBoundaries
+     *
+     * The HASHED_WORD mode splits the words as the WORD mode (BreakIterator): on random texts of letters, digits,
+     * punctuation, accents and ideographs, the words hashed by WordShingleHasher are the ones of BreakIterator
+     */
+    private static void wordBoundaries() {
+        Random random = new Random(SEED);
+        StringBuilder alphabet = new StringBuilder("’‘“”·…«»€£¡¿‐–—éñÄкиαβ٣\u0301中文日本");
+        for (char c = ' '; c < 127; c++) {
+            alphabet.append(c);
+        }
+        WordShingleHasher hasher = new WordShingleHasher(1);
+        for (int t = 0; t < 20000; t++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                // no combining mark after an ideograph (see WordShingleHasher)
+                if (c != '\u0301' || text.length() == 0 || !Character.isIdeographic(text.charAt(text.length() - 1))) {
+                    text.append(c);
+                }
+            }
+
+            // the words of the WORD mode, each one hashed on its own
+            LongArrayList expected = new LongArrayList(16);
+            BreakIterator breakIterator = BreakIterator.getWordInstance();
+            breakIterator.setText(text.toString());
+            int last = breakIterator.first();
+            while (last != BreakIterator.DONE) {
+                int first = last;
+                last = breakIterator.next();
+                if (last != BreakIterator.DONE && Character.isLetterOrDigit(text.charAt(first))) {
+                    hasher.hash(text.substring(first, last), expected::add);
+                }
+            }
+            LongArrayList actual = new LongArrayList(16);
+            hasher.hash(text, actual::add);
+            check(Arrays.equals(expected.toArray(), actual.toArray()), "different words in \"" + text + "\"");
+        }
+        System.out.println("OK word boundaries");
+    }
+
+    /**
+     * hammingIndex
+     *
+     * The permuted tables of the HammingIndex find every fingerprint within the distance of the query,
+     * whatever the number of blocks chosen for the expected number of documents
+     */
+    private static void hammingIndex() {
+        Random random = new Random(SEED);
+        for (int bits : new int[]{64, 128}) {
+            for (int maxDistance : new int[]{0, 3, 7}) {
+                for (int expectedDocuments : new int[]{100, 1 << 20}) {
+                    HammingIndex index = new HammingIndex(bits, maxDistance, expectedDocuments);
+                    // groups of near fingerprints: a random one and copies with a few bits flipped
+                    List<long[]> fingerprints = new ArrayList<>();
+                    for (int group = 0; group < 100; group++) {
+                        long[] center = new long[bits / 64];
+                        for (int word = 0; word < center.length; word++) {
+                            center[word] = random.nextLong();
+                        }
+                        for (int copy = 0; copy < 5; copy++) {
+                            long[] fingerprint = center.clone();
+                            for (int flip = random.nextInt(maxDistance + 3); flip > 0; flip--) {
+                                int bit = random.nextInt(bits);
+                                fingerprint[bit >>> 6] ^= 1L << bit;
+                            }
+                            fingerprints.add(fingerprint);
+                            index.add(fingerprint);
+                        }
+                    }
+                    for (long[] query : fingerprints) {
+                        for (int distance = 0; distance <= maxDistance; distance++) {
+                            int expected = 0;
+                            for (long[] fingerprint : fingerprints) {
+                                if (SimHash.hammingDistance(query, fingerprint) <= distance) {
+                                    expected++;
+                                }
+                            }
+                            check(index.query(query, distance).size() == expected, "the Hamming index with "
+                                    + index.getNumberOfTables() + " tables misses fingerprints at distance " + distance);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("OK Hamming index");
+    }
+
+    /**
+     * multiProbeRecall
+     *
+     * With 80 probes, an OnlineLshIndex of 8 bands finds at least as many near duplicates as one of 20 bands
+     * (same rows, 2.5 times the band tables) without probes, for both schemes
+     */
+    private static void multiProbeRecall() {
+        Random random = new Random(SEED);
+        int numberOfDocuments = 3000;
+        // documents of 300 random shingles, each queried with 40% of its shingles replaced (similarity about 0.43)
+        long[][] documents = new long[numberOfDocuments][], queries = new long[numberOfDocuments][];
+        for (int doc = 0; doc < numberOfDocuments; doc++) {
+            long[] shingles = new long[300];
+            for (int i = 0; i < shingles.length; i++) {
+                shingles[i] = random.nextLong();
+            }
+            documents[doc] = ShingleSets.sortedSet(shingles, shingles.length);
+            for (int i = 0; i < shingles.length; i++) {
+                if (random.nextInt(100) < 40) {
+                    shingles[i] = random.nextLong();
+                }
+            }
+            queries[doc] = ShingleSets.sortedSet(shingles, shingles.length);
+        }
+
+        for (SignatureScheme scheme : SignatureScheme.values()) {
+            MinHasher minHasher = new MinHasher(100, SEED, scheme);
+            double exact = recall(minHasher, new LshParameters(20, 5), documents, queries, 0);
+            double probed = recall(minHasher, new LshParameters(8, 5), documents, queries, 80);
+            check(probed >= exact, scheme + ": recall of 8 bands and 80 probes " + probed + " below 20 bands " + exact);
+            System.out.println("OK multi-probe recall " + scheme + ": 20 bands " + exact + ", 8 bands and 80 probes " + probed);
+        }
+    }
+
+    // fraction of the queries that find the document they were made from
+    private static double recall(MinHasher minHasher, LshParameters parameters, long[][] documents, long[][] queries,
+                                 int probes) {
+        OnlineLshIndex index = new OnlineLshIndex(new Shingling(3, ShinglingMode.WORD), minHasher, parameters);
+        int[] signature = new int[minHasher.length()];
+        for (long[] document : documents) {
+            minHasher.signature(document, signature, 0);
+            index.add(signature.clone());
+        }
+        int found = 0;
+        for (int doc = 0; doc < queries.length; doc++) {
+            minHasher.signature(queries[doc], signature, 0);
+            int[] secondMinimums = minHasher.secondMinimums(queries[doc], signature);
+            if (contains(index.query(signature, secondMinimums, 0.0, probes), doc + 1)) {
+                found++;
+            }
+        }
+        return found / (double) queries.length;
+    }
+
+    /**
+     * weightedEstimate
+     *
+     * The agreement of the ICWS signatures (Shingling.weightedMinHashing) estimates the weighted Jaccard similarity
+     * of the shingle counts, which the Shingling only keeps when it is created with keepCounts
+     */
+    private static void weightedEstimate() {
+        Random random = new Random(SEED);
+        Shingling shingling = new Shingling(3, ShinglingMode.WORD, SEED, true);
+        int pairs = 100;
+        for (int pair = 0; pair < pairs; pair++) {
+            // repeated shingles from a small universe, and a copy with a random part of them replaced
+            LongArrayList occurrences = new LongArrayList(400), copy = new LongArrayList(400);
+            int replaced = random.nextInt(100);
+            for (int i = 0; i < 400; i++) {
+                long shingle = (long) (100 * Math.pow(random.nextDouble(), 2));
+                occurrences.add(shingle);
+                copy.add(random.nextInt(100) < replaced ? 100 + random.nextInt(100) : shingle);
+            }
+            check(shingling.addShingleHistogram(ShingleHistogram.of(occurrences)) == 2 * pair + 1
+                    && shingling.addShingleHistogram(ShingleHistogram.of(copy)) == 2 * pair + 2, "unexpected document id");
+        }
+
+        shingling.weightedMinHashing(400, false);
+        double totalError = 0;
+        for (int pair = 0; pair < pairs; pair++) {
+            double exact = shingling.weightedJaccardSimilarity(2 * pair + 1, 2 * pair + 2);
+            double estimate = shingling.compareSignatures(2 * pair + 1, 2 * pair + 2);
+            // the standard deviation of the estimate is at most 0.5 / sqrt(400) = 0.025
+            check(Math.abs(estimate - exact) <= 0.1, "weighted estimate " + estimate + " for a similarity of " + exact);
+            totalError += Math.abs(estimate - exact);
+        }
+        check(totalError / pairs <= 0.03, "mean error of the weighted estimates " + totalError / pairs);
+
+        boolean failed = false;
+        try {
+            Shingling withoutCounts = new Shingling(3, ShinglingMode.WORD, SEED);
+            withoutCounts.addShingleSet(new long[]{1, 2, 3});
+            withoutCounts.weightedMinHashing(10, false);
+        } catch (IllegalStateException e) {
+            failed = true;
+        }
+        check(failed, "weighted signatures computed without the shingle counts");
+        System.out.println("OK weighted estimate: mean error " + totalError / pairs);
+    }
+
+    /**
+     * bBitEstimate
+     *
+     * The estimator of Li and König (BBitSignatureMatrix.similarity with the sizes of the sets) is close to the exact
+     * Jaccard similarity and unbiased for every b, while the raw fraction of matching rows overestimates it
+     */
+    private static void bBitEstimate() {
+        Random random = new Random(SEED);
+        List<long[]> documents = new ArrayList<>();
+        int pairs = 100;
+        for (int pair = 0; pair < pairs; pair++) {
+            // a set and a copy with a random part of its shingles replaced
+            long[] shingles = distinctShingles(random, 600);
+            long[] set = Arrays.copyOf(shingles, 300), copy = Arrays.copyOf(shingles, 300);
+            int replaced = random.nextInt(300);
+            System.arraycopy(shingles, 300, copy, 0, replaced);
+            documents.add(sorted(set));
+            documents.add(sorted(copy));
+        }
+
+        MinHasher minHasher = new MinHasher(512, SEED, SignatureScheme.K_HASH);
+        SignatureMatrix full = minHasher.signatures(documents, false);
+        StringBuilder errors = new StringBuilder();
+        for (int b : new int[]{1, 2, 4, 8}) {
+            BBitSignatureMatrix matrix = minHasher.bBitSignatures(documents, b, true);
+            check(Arrays.equals(matrix.getWords(), BBitSignatureMatrix.pack(full, b).getWords()),
+                    b + "-bit signatures differ from the packed full signatures");
+            double totalError = 0, bias = 0, rawBias = 0;
+            for (int pair = 0; pair < pairs; pair++) {
+                int doc1 = 2 * pair + 1, doc2 = 2 * pair + 2;
+                double exact = jaccard(documents.get(doc1 - 1), documents.get(doc2 - 1));
+                double estimate = matrix.similarity(doc1, doc2, 300, 300);
+                // the standard deviation of the estimate is at most 0.5 / sqrt(512 / 4) = 0.044 (b = 1, similarity 0)
+                check(Math.abs(estimate - exact) <= 0.2, b + "-bit estimate " + estimate + " for a similarity of " + exact);
+                totalError += Math.abs(estimate - exact);
+                bias += estimate - exact;
+                rawBias += (double) matrix.matches(doc1, doc2) / matrix.length() - exact;
+            }
+            check(totalError / pairs <= 0.05, "mean error of the " + b + "-bit estimates " + totalError / pairs);
+            check(Math.abs(bias / pairs) <= 0.02, "bias of the " + b + "-bit estimates " + bias / pairs);
+            // random matches of the low bits add about (1 - similarity) / 2^b, lost in the noise from b = 4
+            check(b > 2 || rawBias / pairs >= 0.25 / (1 << b), "matching rows of " + b + " bits not biased: " + rawBias / pairs);
+            errors.append(errors.length() == 0 ? "" : ", ").append(b).append(" bits ")
+                    .append(String.format(Locale.ROOT, "%.4f", totalError / pairs));
+        }
+        System.out.println("OK b-bit estimate: mean error " + errors);
+    }
+
+    /**
+     * shardMerge
+     *
+     * The shards written and read back by SignatureShard merge, in any order, in the signature matrix
+     * of the whole corpus (with empty shards when there are more shards than documents),
+     * and a missing shard or a corrupted header is rejected
+     */
+    private static void shardMerge() throws IOException {
+        Random random = new Random(SEED);
+        File folder = Files.createTempDirectory("checks-").toFile();
+        try {
+            for (int numberOfDocuments : new int[]{23, 3}) {
+                List<long[]> documents = randomShingleSets(random, numberOfDocuments, 2000, 60);
+                int shards = 5;
+                for (SignatureScheme scheme : SignatureScheme.values()) {
+                    MinHasher minHasher = new MinHasher(64, SEED, scheme);
+                    SignatureMatrix expected = minHasher.signatures(documents, false);
+
+                    List<File> files = new ArrayList<>();
+                    for (int shard = 0; shard < shards; shard++) {
+                        int[] slice = SignatureShard.slice(numberOfDocuments, shard, shards);
+                        SignatureMatrix signatures = minHasher.signatures(documents.subList(slice[0], slice[1]), false);
+                        File file = new File(folder, "shard-" + shard + ".sig");
+                        new SignatureShard(numberOfDocuments, shards, slice[0] + 1, signatures, scheme, SEED).write(file);
+                        files.add(file);
+                    }
+                    Collections.shuffle(files, random);
+                    List<SignatureShard> read = new ArrayList<>();
+                    for (File file : files) {
+                        read.add(SignatureShard.read(file));
+                    }
+                    check(Arrays.equals(expected.getValues(), SignatureShard.merge(read).getValues()),
+                            "merged shards differ from the signatures of the corpus with " + scheme);
+
+                    boolean failed = false;
+                    try {
+                        SignatureShard.merge(read.subList(1, shards));
+                    } catch (IllegalArgumentException e) {
+                        failed = true;
+                    }
+                    check(failed, "shards merged without one of them");
+                }
+            }
+
+            // an unknown scheme in the header of a shard
+            File file = new File(folder, "shard-0.sig");
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                output.seek(28);
+                output.writeInt(SignatureScheme.values().length);
+            }
+            boolean failed = false;
+            try {
+                SignatureShard.read(file);
+            } catch (IOException e) {
+                failed = true;
+            }
+            check(failed, "shard with an unknown scheme read");
+        } finally {
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            folder.delete();
+        }
+        System.out.println("OK shard merge");
+    }
+
+    /**
+     * bandKeys
+     *
+     * The keys of BandHasher.hashBand (used by LSH.findCandidates) are the ones of BandHasher.hash,
+     * and SignatureComparator.rank (and its early exit) keeps the documents agreeing on at least the rows
+     * of the threshold
+     */
+    private static void bandKeys() {
+        Random random = new Random(SEED);
+        for (int numberOfDocuments : new int[]{0, 1, 7, 100}) {
+            SignatureMatrix matrix = new SignatureMatrix(numberOfDocuments, 60);
+            int[] values = matrix.getValues();
+            for (int i = 0; i < numberOfDocuments * matrix.length(); i++) {
+                values[i] = random.nextInt(3) == 0 ? SignatureMatrix.EMPTY : random.nextInt(4);
+            }
+            long[] keys = new long[numberOfDocuments];
+            for (int band = 0; band < 12; band++) {
+                BandHasher.hashBand(matrix, band, 5, keys);
+                for (int doc = 1; doc <= numberOfDocuments; doc++) {
+                    check(keys[doc - 1] == BandHasher.hash(values, matrix.offset(doc) + band * 5, 5, band),
+                            "key of band " + band + " of document " + doc + " differs from BandHasher.hash");
+                }
+            }
+
+            int[] query = Arrays.copyOf(values, matrix.length());
+            int[] docs = new int[numberOfDocuments];
+            for (int doc = 1; doc <= numberOfDocuments; doc++) {
+                docs[doc - 1] = doc;
+            }
+            for (int agreements = 0; agreements <= matrix.length(); agreements += 3) {
+                double similarity = agreements / (double) matrix.length();
+                List<OnlineLshIndex.Match> matches = SignatureComparator.rank(query, values, matrix.length(), docs,
+                        numberOfDocuments, similarity);
+                int expected = 0;
+                for (int doc = 1; doc <= numberOfDocuments; doc++) {
+                    int all = SignatureComparator.agreements(query, 0, values, matrix.offset(doc), matrix.length());
+                    int stopped = SignatureComparator.agreements(query, 0, values, matrix.offset(doc), matrix.length(),
+                            agreements);
+                    check(all >= agreements ? stopped == all : stopped < agreements,
+                            "early exit with " + stopped + " rows for " + all + " agreeing at " + agreements);
+                    if (all >= agreements) {
+                        expected++;
+                        check(contains(matches, doc), "document " + doc + " not ranked at " + similarity);
+                    }
+                }
+                check(matches.size() == expected, "documents ranked below " + similarity);
+            }
+        }
+        System.out.println("OK band keys");
+    }
+
+    /**
+     * metricsJson
+     *
+     * A stage that has not been stopped has no duration in the JSON of PipelineMetrics (instead of a negative one),
+     * and the bucket sizes are written for each band
+     */
+    private static void metricsJson() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.start("stopped").stop(10, 0);
+        metrics.start("running");
+        metrics.setBucketSizeHistograms(new long[][]{{3, 1}, {5, 0, 2}});
+        String json = metrics.toJson();
+        check(json.contains("\"running\": {\"seconds\": null, \"items\": 0, \"itemsPerSecond\": null"),
+                "running stage with a duration: " + json);
+        check(!json.contains("\"stopped\": {\"seconds\": null"), "stopped stage without a duration: " + json);
+        check(json.contains("{\"<=1\": 3, \"<=2\": 1},\n    {\"<=1\": 5, \"<=2\": 0, \"<=4\": 2}"),
+                "bucket sizes not written by band: " + json);
+        check(metrics.getPeakHeap() > 0, "no heap sampled");
+        metrics.close();
+        System.out.println("OK metrics JSON");
+    }
+
+    /**
+     * heapPeak
+     *
+     * An array allocated and collected inside a stage is in the peak heap of PipelineMetrics, even though the heap
+     * is back down when the stage starts and stops
+     */
+    private static void heapPeak() throws InterruptedException {
+        int size = 64 << 20;
+        System.gc();
+        long before = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        try (PipelineMetrics metrics = new PipelineMetrics()) {
+            PipelineMetrics.Stage stage = metrics.start("allocation");
+            byte[] garbage = new byte[size];
+            garbage[size - 1] = 1;
+            garbage = null;
+            System.gc();
+            stage.stop(1, size);
+            // the collection is notified by another thread
+            for (int wait = 0; wait < 100 && metrics.getPeakHeap() < before + size; wait++) {
+                Thread.sleep(50);
+            }
+            check(metrics.getPeakHeap() >= before + size, "peak heap " + metrics.getPeakHeap() + " below "
+                    + (before + size) + ": the array allocated in the stage is missed");
+        }
+        System.out.println("OK heap peak");
+    }
+
+    /**
+     * similarityJoin
+     *
+     * The exact join finds the same pairs as the comparison of all the pairs, sequential and parallel, for thresholds
+     * with pairs exactly on them, duplicate and empty documents
+     */
+    private static void similarityJoin() {
+        List<long[]> documents = joinDocuments(new Random(SEED));
+        for (double threshold : JOIN_THRESHOLDS) {
+            long[] expected = similarPairs(documents, threshold);
+            check(expected.length > 0, "no similar pairs at " + threshold);
+            SimilarityJoin join = new SimilarityJoin(documents, threshold);
+            check(Arrays.equals(join.join(false).toSortedArray(), expected), "sequential join differs at " + threshold);
+            check(Arrays.equals(join.join(true).toSortedArray(), expected), "parallel join differs at " + threshold);
+        }
+        System.out.println("OK similarity join");
+    }
+
+    /**
+     * candidateVerifier
+     *
+     * The verification of all the pairs passes on exactly the pairs with a Jaccard similarity of at least the threshold,
+     * the ones right on it included, with their similarity, and the parallel verification the same ones
+     */
+    private static void candidateVerifier() {
+        List<long[]> documents = joinDocuments(new Random(SEED + 1));
+        LongHashSet allPairs = new LongHashSet();
+        for (int doc1 = 1; doc1 <= documents.size(); doc1++) {
+            for (int doc2 = doc1 + 1; doc2 <= documents.size(); doc2++) {
+                allPairs.add(DocumentPairs.encode(doc1, doc2));
+            }
+        }
+        for (double threshold : JOIN_THRESHOLDS) {
+            long[] expected = similarPairs(documents, threshold);
+            CandidateVerifier verifier = new CandidateVerifier(documents, threshold);
+            Map<Long, Float> sequential = verifiedPairs(verifier, allPairs, false);
+            check(Arrays.equals(toSortedArray(sequential), expected), "verified pairs differ at " + threshold);
+            for (Map.Entry<Long, Float> pair : sequential.entrySet()) {
+                double similarity = jaccard(documents.get(DocumentPairs.first(pair.getKey()) - 1),
+                        documents.get(DocumentPairs.second(pair.getKey()) - 1));
+                check(pair.getValue() == (float) similarity, "wrong similarity of " + DocumentPairs.toString(pair.getKey()));
+            }
+            check(verifiedPairs(verifier, allPairs, true).equals(sequential), "parallel verification differs at " + threshold);
+        }
+        System.out.println("OK candidate verifier");
+    }
+
+    // the pairs passed on by the verifier with their similarity, checking the count it returns
+    private static Map<Long, Float> verifiedPairs(CandidateVerifier verifier, LongHashSet candidatePairs, boolean parallel) {
+        Map<Long, Float> pairs = new ConcurrentHashMap<>();
+        int confirmed = verifier.verify(candidatePairs, parallel, (doc1, doc2, similarity) -> {
+            check(pairs.put(DocumentPairs.encode(doc1, doc2), similarity) == null, "pair verified twice");
+        });
+        check(confirmed == pairs.size(), "wrong number of verified pairs");
+        return pairs;
+    }
+
+    private static long[] toSortedArray(Map<Long, Float> pairs) {
+        long[] sorted = new long[pairs.size()];
+        int i = 0;
+        for (long pair : pairs.keySet()) {
+            sorted[i++] = pair;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * documentClusters
+     *
+     * The clusters built by parallel unions of random edges are the ones of a sequential union-find
+     */
+    private static void documentClusters() {
+        Random random = new Random(SEED);
+        for (int round = 0; round < 20; round++) {
+            int numberOfDocuments = 1 + random.nextInt(5000);
+            int[][] edges = new int[random.nextInt(numberOfDocuments)][];
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = new int[]{1 + random.nextInt(numberOfDocuments), 1 + random.nextInt(numberOfDocuments)};
+            }
+
+            // sequential union-find: each document points to a smaller one of its cluster, or to itself
+            int[] parents = new int[numberOfDocuments + 1];
+            for (int doc = 0; doc <= numberOfDocuments; doc++) {
+                parents[doc] = doc;
+            }
+            for (int[] edge : edges) {
+                int root1 = root(parents, edge[0]), root2 = root(parents, edge[1]);
+                parents[Math.max(root1, root2)] = Math.min(root1, root2);
+            }
+            List<List<Integer>> expected = new ArrayList<>();
+            List<List<Integer>> byRoot = new ArrayList<>(Collections.nCopies(numberOfDocuments + 1, null));
+            for (int doc = 1; doc <= numberOfDocuments; doc++) {
+                int root = root(parents, doc);
+                if (byRoot.get(root) == null) {
+                    byRoot.set(root, new ArrayList<>());
+                    expected.add(byRoot.get(root));
+                }
+                byRoot.get(root).add(doc);
+            }
+
+            DocumentClusters clusters = new DocumentClusters(numberOfDocuments);
+            AtomicInteger unions = new AtomicInteger();
+            DocumentTasks.forEachDocument(edges.length, true, i -> {
+                if (clusters.union(edges[i - 1][0], edges[i - 1][1])) {
+                    unions.incrementAndGet();
+                }
+            });
+            List<List<Integer>> found = new ArrayList<>();
+            for (int[] cluster : clusters.getClusters(1)) {
+                List<Integer> documents = new ArrayList<>();
+                for (int doc : cluster) {
+                    documents.add(doc);
+                }
+                found.add(documents);
+            }
+            check(found.equals(expected), "clusters differ from the sequential union-find in round " + round);
+            check(clusters.getNumberOfClusters() == expected.size(), "wrong number of clusters in round " + round);
+            check(unions.get() == numberOfDocuments - expected.size(), "wrong number of merges in round " + round);
+            for (int[] cluster : clusters.getClusters(2)) {
+                check(cluster.length >= 2 && clusters.find(cluster[1]) == cluster[0], "cluster id is not its smallest document");
+            }
+        }
+        System.out.println("OK document clusters");
+    }
+
+    private static int root(int[] parents, int doc) {
+        while (parents[doc] != doc) {
+            doc = parents[doc];
+        }
+        return doc;
+    }
+
+    /**
+     * kmvEstimates
+     *
+     * The KMV sketches estimate the size and the containment of random sets close to the exact values (exactly below
+     * k shingles), the sketch of a union is the one of the union set, and sketches of different seeds are refused
+     */
+    private static void kmvEstimates() {
+        Random random = new Random(SEED);
+        int k = 1024, trials = 20;
+        double sizeError = 0, containmentError = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            // sets of 5000 and 8000 shingles with 3000 in common: the first one is contained at 0.6 in the second
+            long[] shingles = distinctShingles(random, 10000);
+            long[] set1 = sorted(Arrays.copyOfRange(shingles, 0, 5000));
+            long[] set2 = sorted(Arrays.copyOfRange(shingles, 2000, 10000));
+            KmvSketch sketch1 = KmvSketch.of(set1, k, SEED), sketch2 = KmvSketch.of(set2, k, SEED);
+            sizeError += Math.abs(sketch1.cardinality() / set1.length - 1) + Math.abs(sketch2.cardinality() / set2.length - 1);
+            containmentError += Math.abs(sketch1.containment(sketch2) - 0.6);
+            check(Arrays.equals(sketch1.union(sketch2).getValues(), KmvSketch.of(shingles, k, SEED).getValues()),
+                    "the sketch of the union is not the one of the union set");
+        }
+        sizeError /= 2 * trials;
+        containmentError /= trials;
+        check(sizeError < 0.05, "mean relative error of the size " + sizeError);
+        check(containmentError < 0.05, "mean error of the containment " + containmentError);
+
+        // below k shingles the sketches keep every hash
+        long[] shingles = distinctShingles(random, 300);
+        long[] small1 = sorted(Arrays.copyOfRange(shingles, 0, 200)), small2 = sorted(Arrays.copyOfRange(shingles, 50, 300));
+        KmvSketch sketch1 = KmvSketch.of(small1, k, SEED), sketch2 = KmvSketch.of(small2, k, SEED);
+        check(sketch1.cardinality() == 200 && sketch2.cardinality() == 250, "inexact size below k");
+        check(Math.abs(sketch1.containment(sketch2) - 0.75) < 1e-9, "inexact containment below k");
+        check(Math.abs(sketch1.jaccard(sketch2) - 0.5) < 1e-9, "inexact Jaccard similarity below k");
+
+        for (KmvSketch other : new KmvSketch[]{KmvSketch.of(small2, k, SEED + 1), KmvSketch.of(small2, k / 2, SEED)}) {
+            try {
+                sketch1.containment(other);
+                throw new AssertionError("sketches of seed " + other.getSeed() + " and k " + other.getK() + " combined");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        System.out.println("OK KMV estimates: size error " + sizeError + ", containment error " + containmentError);
+    }
+
+    // distinct random shingles, in random order
+    private static long[] distinctShingles(Random random, int count) {
+        LongHashSet seen = new LongHashSet();
+        long[] shingles = new long[count];
+        for (int i = 0; i < count; ) {
+            long shingle = random.nextLong();
+            if (seen.add(shingle)) {
+                shingles[i++] = shingle;
+            }
+        }
+        return shingles;
+    }
+
+    private static long[] sorted(long[] values) {
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * parallelSignatures
+     *
+     * The signatures computed by the threads of the fork/join pool are the same as the sequential ones,
+     * for both schemes
+     */
+    private static void parallelSignatures() {
+        Shingling shingling = new Shingling(9, ShinglingMode.ROLLING_CHARACTER, SEED);
+        for (long[] document : randomShingleSets(new Random(SEED), 1000, 5000, 200)) {
+            shingling.addShingleSet(document);
+        }
+        shingling.addShingleSet(new long[0]);
+        for (SignatureScheme scheme : SignatureScheme.values()) {
+            int[] sequential = shingling.minHashing(100, scheme, false).getValues().clone();
+            int[] parallel = shingling.minHashing(100, scheme, true).getValues();
+            check(Arrays.equals(sequential, parallel), "parallel signatures differ from the sequential ones with " + scheme);
+        }
+        System.out.println("OK parallel signatures");
+    }
+
+    /**
+     * persistentIndex
+     *
+     * A PersistentLshIndex appended to several times and reopened answers as the in-memory OnlineLshIndex
+     * of the same signatures, compact keeps the document ids and the size cap of the segments,
+     * and an index whose compaction was interrupted (the old segments still next to the new ones) opens
+     * with each document once. An index is not opened for other shingles.
+     */
+    private static void persistentIndex() throws IOException {
+        List<long[]> documents = randomShingleSets(new Random(SEED), 400, 3000, 80);
+        LshParameters parameters = new LshParameters(20, 5);
+        MinHasher minHasher = new MinHasher(100, SEED, SignatureScheme.K_HASH);
+        SignatureMatrix signatures = minHasher.signatures(documents, false);
+        OnlineLshIndex expected = new OnlineLshIndex(new Shingling(3, ShinglingMode.WORD), minHasher, parameters);
+        for (int doc = 1; doc <= documents.size(); doc++) {
+            expected.add(Arrays.copyOfRange(signatures.getValues(), signatures.offset(doc), signatures.offset(doc + 1)));
+        }
+
+        File folder = Files.createTempDirectory("checks-").toFile();
+        File saved = Files.createTempDirectory("checks-").toFile();
+        try {
+            PersistentLshIndex index = new PersistentLshIndex(folder, 3, ShinglingMode.WORD, 100, parameters,
+                    SignatureScheme.K_HASH, SEED);
+            for (int part = 0; part < 4; part++) {
+                List<int[]> appended = new ArrayList<>();
+                for (int doc = part * 100 + 1; doc <= part * 100 + 100; doc++) {
+                    appended.add(expected.getSignature(doc));
+                }
+                check(index.append(appended) == part * 100 + 1, "unexpected first document of an append");
+            }
+            checkIndex(PersistentLshIndex.open(folder, 3, ShinglingMode.WORD), expected, 4, "reopened");
+
+            boolean failed = false;
+            try {
+                PersistentLshIndex.open(folder, 4, ShinglingMode.WORD);
+            } catch (IOException e) {
+                failed = true;
+            }
+            check(failed, "index opened for shingles of another size");
+
+            // compact in two segments of 200 documents, keeping a copy of the old segments
+            for (File file : segmentFiles(folder)) {
+                Files.copy(file.toPath(), new File(saved, file.getName()).toPath());
+            }
+            index = PersistentLshIndex.open(folder);
+            index.compact(LshSegment.size(200, 100, 20));
+            checkIndex(index, expected, 2, "compacted");
+            checkIndex(PersistentLshIndex.open(folder), expected, 2, "compacted and reopened");
+            List<File> compacted = segmentFiles(folder);
+
+            // stopped after the first merged segment: the old segments and the first new one
+            Files.delete(compacted.get(1).toPath());
+            for (File file : segmentFiles(saved)) {
+                Files.copy(file.toPath(), new File(folder, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            checkIndex(PersistentLshIndex.open(folder), expected, 3, "half compacted");
+            check(segmentFiles(folder).size() == 3, "replaced segments not deleted");
+
+            // stopped after both merged segments
+            index = PersistentLshIndex.open(folder);
+            index.compact(LshSegment.size(200, 100, 20));
+            for (File file : segmentFiles(saved)) {
+                Files.copy(file.toPath(), new File(folder, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            checkIndex(PersistentLshIndex.open(folder), expected, 2, "compacted with the old segments left");
+            check(segmentFiles(folder).size() == 2, "replaced segments not deleted");
+        } finally {
+            for (File directory : new File[]{folder, saved}) {
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                directory.delete();
+            }
+        }
+        System.out.println("OK persistent index");
+    }
+
+    // same documents, signatures and query results as the in-memory index
+    private static void checkIndex(PersistentLshIndex index, OnlineLshIndex expected, int segments, String state) {
+        check(index.getNumberOfSegments() == segments, state + ": " + index.getNumberOfSegments() + " segments");
+        check(index.getNumberOfDocuments() == expected.getNumberOfDocuments(), state + ": missing documents");
+        for (int doc = 1; doc <= expected.getNumberOfDocuments(); doc++) {
+            int[] signature = expected.getSignature(doc);
+            check(Arrays.equals(index.getSignature(doc), signature), state + ": signature of document " + doc + " changed");
+            check(sortedMatches(index.query(signature, 0.3)).equals(sortedMatches(expected.query(signature, 0.3))),
+                    state + ": query of document " + doc + " differs from the in-memory index");
+        }
+    }
+
+    private static List<String> sortedMatches(List<OnlineLshIndex.Match> matches) {
+        List<String> sorted = new ArrayList<>();
+        for (OnlineLshIndex.Match match : matches) {
+            sorted.add(match.getDoc() + "=" + match.getSimilarity());
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static List<File> segmentFiles(File folder) {
+        File[] files = folder.listFiles((directory, name) -> name.endsWith(".lsh"));
+        List<File> sorted = new ArrayList<>(Arrays.asList(files == null ? new File[0] : files));
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static boolean contains(List<OnlineLshIndex.Match> matches, int doc) {
+        for (OnlineLshIndex.Match match : matches) {
+            if (match.getDoc() == doc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // sorted sets of shingles drawn from [0, universe), so that documents share shingles
+    /**
+     * joinDocuments
+     *
+     * Documents for the checks of the exact similarities: for every union size u up to 12 and overlap c up to u,
+     * a pair of documents of Jaccard similarity exactly c / u (so every threshold c / u has pairs right on it), then
+     * random documents, variants of the previous ones with a few shingles changed, duplicates and empty documents
+     */
+    private static List<long[]> joinDocuments(Random random) {
+        List<long[]> documents = new ArrayList<>();
+        long base = 1_000_000;
+        for (int union = 1; union <= 12; union++) {
+            for (int common = 0; common <= union; common++) {
+                int only1 = (union - common) / 2, only2 = union - common - only1;
+                long[] set1 = new long[common + only1], set2 = new long[common + only2];
+                for (int i = 0; i < common; i++) {
+                    set1[i] = set2[i] = base + i;
+                }
+                for (int i = 0; i < only1; i++) {
+                    set1[common + i] = base + common + i;
+                }
+                for (int i = 0; i < only2; i++) {
+                    set2[common + i] = base + common + only1 + i;
+                }
+                documents.add(set1);
+                documents.add(set2);
+                base += union;
+            }
+        }
+        for (long[] document : randomShingleSets(random, 300, 400, 30)) {
+            int kind = random.nextInt(6);
+            if (kind == 0) {
+                documents.add(new long[0]);
+            } else if (kind == 1) {
+                documents.add(documents.get(random.nextInt(documents.size())).clone());
+            } else if (kind <= 3) {
+                // a previous document with some shingles dropped and some added
+                long[] previous = documents.get(documents.size() - 1 - random.nextInt(Math.min(documents.size(), 20)));
+                long[] variant = Arrays.copyOf(previous, previous.length + 3);
+                int size = 0;
+                for (long shingle : previous) {
+                    if (random.nextInt(8) != 0) {
+                        variant[size++] = shingle;
+                    }
+                }
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    variant[size++] = random.nextInt(400);
+                }
+                Arrays.sort(variant, 0, size);
+                int distinct = 0;
+                for (int i = 0; i < size; i++) {
+                    if (distinct == 0 || variant[i] != variant[distinct - 1]) {
+                        variant[distinct++] = variant[i];
+                    }
+                }
+                documents.add(Arrays.copyOf(variant, distinct));
+            } else {
+                documents.add(document);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * similarPairs
+     *
+     * @return all the pairs of documents with a Jaccard similarity of at least the threshold, compared one by one
+     * (the empty documents are similar to nothing), sorted (see DocumentPairs)
+     */
+    private static long[] similarPairs(List<long[]> documents, double threshold) {
+        LongHashSet pairs = new LongHashSet();
+        for (int doc1 = 1; doc1 <= documents.size(); doc1++) {
+            for (int doc2 = doc1 + 1; doc2 <= documents.size(); doc2++) {
+                if (jaccard(documents.get(doc1 - 1), documents.get(doc2 - 1)) >= threshold) {
+                    pairs.add(DocumentPairs.encode(doc1, doc2));
+                }
+            }
+        }
+        return pairs.toSortedArray();
+    }
+
+    // exact Jaccard similarity of two sorted sets, 0 if both are empty
+    private static double jaccard(long[] set1, long[] set2) {
+        int common = 0;
+        for (int i = 0, j = 0; i < set1.length && j < set2.length; ) {
+            if (set1[i] < set2[j]) {
+                i++;
+            } else if (set1[i] > set2[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        int union = set1.length + set2.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    private static List<long[]> randomShingleSets(Random random, int numberOfDocuments, int universe, int maxSize) {
+        List<long[]> sets = new ArrayList<>();
+        for (int doc = 0; doc < numberOfDocuments; doc++) {
+            long[] set = new long[1 + random.nextInt(maxSize)];
+            for (int i = 0; i < set.length; i++) {
+                set[i] = random.nextInt(universe);
+            }
+            Arrays.sort(set);
+            int size = 0;
+            for (int i = 0; i < set.length; i++) {
+                if (size == 0 || set[i] != set[size - 1]) {
+                    set[size++] = set[i];
+                }
+            }
+            sets.add(Arrays.copyOf(set, size));
+        }
+        return sets;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}